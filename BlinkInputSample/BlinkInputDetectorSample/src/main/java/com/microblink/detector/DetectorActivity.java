@@ -11,9 +11,9 @@ import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.Rect;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.provider.MediaStore;
 import android.view.InflateException;
 import android.view.View;
 import android.view.ViewGroup;
@@ -33,12 +33,14 @@ import com.microblink.blinkinput.entities.recognizers.templating.dewarpPolicies.
 import com.microblink.blinkinput.geometry.Rectangle;
 import com.microblink.blinkinput.hardware.SuccessCallback;
 import com.microblink.blinkinput.hardware.orientation.Orientation;
+import com.microblink.blinkinput.image.Image;
 import com.microblink.input.R;
 import com.microblink.blinkinput.metadata.MetadataCallbacks;
 import com.microblink.blinkinput.metadata.detection.FailedDetectionCallback;
 import com.microblink.blinkinput.metadata.detection.quad.DisplayableQuadDetection;
 import com.microblink.blinkinput.metadata.detection.quad.QuadDetectionCallback;
 import com.microblink.blinkinput.recognition.RecognitionSuccessType;
+import com.microblink.blinkinput.storage.MediaStoreExporter;
 import com.microblink.blinkinput.util.CameraPermissionManager;
 import com.microblink.blinkinput.util.Log;
 import com.microblink.blinkinput.view.BaseCameraView;
@@ -54,6 +56,7 @@ import com.microblink.blinkinput.view.viewfinder.quadview.QuadViewManagerFactory
 import com.microblink.blinkinput.view.viewfinder.quadview.QuadViewPreset;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 public class DetectorActivity extends Activity {
 
@@ -217,8 +220,7 @@ public class DetectorActivity extends Activity {
             @Override
             public void onClick(View v) {
                 // release Bitmap
-                mImageView.setImageResource(android.R.color.transparent);
-                mShownBitmap = null;
+                releaseShownBitmap();
                 // hide resultView
                 mResultView.setVisibility(View.INVISIBLE);
                 mRecognizerRunnerView.invalidate();
@@ -234,13 +236,21 @@ public class DetectorActivity extends Activity {
         mBtnSave.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                // save image to gallery
-                String url = MediaStore.Images.Media.insertImage(DetectorActivity.this.getContentResolver(), mShownBitmap, "Detected Image", "");
-                Log.i(DetectorActivity.this, "Image saved to URL {}", url);
+                // save image to gallery, image is encoded and written on background thread so
+                // scanning can be resumed immediately
+                Image image = mImageReturnProcessor.getResult().getRawImage();
+                if (image != null) {
+                    MediaStoreExporter.getInstance(DetectorActivity.this).export(image,
+                            "DetectedImage_" + System.currentTimeMillis(), new MediaStoreExporter.Callback() {
+                                @Override
+                                public void onImageExported(@Nullable Uri uri) {
+                                    Log.i(DetectorActivity.this, "Image saved to URL {}", uri);
+                                }
+                            });
+                }
 
                 // release Bitmap
-                mImageView.setImageResource(android.R.color.transparent);
-                mShownBitmap = null;
+                releaseShownBitmap();
                 // hide resultView
                 mResultView.setVisibility(View.INVISIBLE);
                 mRecognizerRunnerView.invalidate();
@@ -373,6 +383,7 @@ public class DetectorActivity extends Activity {
     private void showImage() {
         if(mImageReturnProcessor.getResult().getRawImage() != null) {
             // create bitmap out of last dewarped image
+            releaseShownBitmap();
             mShownBitmap = mImageReturnProcessor.getResult().getRawImage().convertToBitmap();
             // display bitmap
             mImageView.setImageBitmap(mShownBitmap);
@@ -380,7 +391,8 @@ public class DetectorActivity extends Activity {
             mResultView.setVisibility(View.VISIBLE);
             mHaveResult = false;
 
-            if (Build.VERSION.SDK_INT >= 23) {
+            // storage permission is not needed for inserting own images on Android 10 and newer
+            if (Build.VERSION.SDK_INT >= 23 && Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
                 if (checkSelfPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
                     mBtnSave.setVisibility(View.INVISIBLE);
                     requestPermissions(new String[] {Manifest.permission.WRITE_EXTERNAL_STORAGE}, MY_STORAGE_REQUEST_CODE);
@@ -389,6 +401,16 @@ public class DetectorActivity extends Activity {
         }
     }
 
+    private void releaseShownBitmap() {
+        mImageView.setImageResource(android.R.color.transparent);
+        if (mShownBitmap != null) {
+            // free pixels of the previous result right away instead of waiting for the GC, every
+            // result is converted into a new bitmap
+            mShownBitmap.recycle();
+            mShownBitmap = null;
+        }
+    }
+
     private final OnSizeChangedListener mOnSizeChangedListener = new OnSizeChangedListener() {
         @Override
         public void onSizeChanged(int width, int height) {
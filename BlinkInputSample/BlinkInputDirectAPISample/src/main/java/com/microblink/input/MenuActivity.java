@@ -45,6 +45,12 @@ public class MenuActivity extends BaseMenuActivity {
      */
     private RecognizerBundle mRecognizerBundle;
 
+    /**
+     * Minimum character height of the OCR engine, used by ScanImageActivity to decode chosen photos
+     * only at the resolution needed by the OCR
+     */
+    private int mMinimumCharHeight;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -71,6 +77,7 @@ public class MenuActivity extends BaseMenuActivity {
             public void run() {
                 Intent intent = new Intent(MenuActivity.this, ScanImageActivity.class);
                 mRecognizerBundle.saveToIntent(intent);
+                intent.putExtra(ScanImageActivity.EXTRA_MINIMUM_CHAR_HEIGHT, mMinimumCharHeight);
                 startActivityForResult(intent, MY_REQUEST_CODE);
             }
         }));
@@ -107,6 +114,7 @@ public class MenuActivity extends BaseMenuActivity {
         // set to false to scan colored text (set to true only for black text on color background)
         engineOptions.setColorDropoutEnabled(false);
         mRawParser.setOcrEngineOptions(engineOptions);
+        mMinimumCharHeight = engineOptions.getMinimumCharHeight();
 
         // Recognizer that will perform recognition of images
         BlinkInputRecognizer blinkInputRecognizer = new BlinkInputRecognizer(
@@ -16,11 +16,16 @@ import android.widget.Toast;
 import com.microblink.blinkinput.directApi.DirectApiErrorListener;
 import com.microblink.blinkinput.directApi.RecognizerRunner;
 import com.microblink.blinkinput.entities.recognizers.RecognizerBundle;
+import com.microblink.blinkinput.geometry.Rectangle;
 import com.microblink.blinkinput.hardware.orientation.Orientation;
-import com.microblink.blinkinput.image.Image;
 import com.microblink.blinkinput.image.ImageBuilder;
 import com.microblink.blinkinput.image.InputImage;
+import com.microblink.blinkinput.metrics.RecognitionMetrics;
 import com.microblink.input.R;
+import com.microblink.input.directapi.CaptureRateController;
+import com.microblink.input.directapi.FrameQualityGate;
+import com.microblink.input.directapi.LumaQualityGate;
+import com.microblink.input.directapi.RoiTracker;
 import com.microblink.input.util.ResultFormater;
 import com.microblink.blinkinput.recognition.FeatureNotSupportedException;
 import com.microblink.blinkinput.recognition.RecognitionSuccessType;
@@ -28,24 +33,56 @@ import com.microblink.blinkinput.view.recognition.ScanResultListener;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.NonNull;
 
 @SuppressWarnings("deprecation")
-public class Camera1Activity extends Activity implements ScanResultListener, SurfaceHolder.Callback, Camera.PreviewCallback {
+public class Camera1Activity extends Activity implements ScanResultListener, SurfaceHolder.Callback {
 
     private static final String TAG = "Camera1Activity";
 
     private SurfaceView mSurfaceView;
     private Camera mCamera;
     private boolean mHaveSurfaceView = false;
-    private byte[] mPixelBuffer;
     private int mFrameWidth;
     private int mFrameHeight;
 
     private RecognizerRunner mRecognizerRunner;
     private RecognizerBundle mRecognizerBundle = new RecognizerBundle();
-
+    private final PreviewBufferPool mBufferPool = new PreviewBufferPool(PreviewBufferPool.DEFAULT_NUM_BUFFERS, new PreviewBufferPool.FrameConsumer() {
+        @Override
+        public boolean onFrameAvailable(@NonNull byte[] frame) {
+            if (mRecognizerRunner.getCurrentState() != RecognizerRunner.State.READY) {
+                mMetrics.onFrameDropped();
+                return false;
+            }
+            FrameQualityGate.Verdict verdict = mQualityGate.evaluate(frame, mFrameWidth, mFrameHeight);
+            if (verdict != FrameQualityGate.Verdict.ACCEPTED) {
+                mMetrics.onFrameRejected();
+                return false;
+            }
+            // create image, frame buffer is used directly and must not be reused until recognition is done
+            Rectangle roi = mRoiTracker.getRegionOfInterest(mFrameWidth, mFrameHeight);
+            InputImage img = ImageBuilder.buildInputImageFromCamera1NV21Frame(frame, mFrameWidth, mFrameHeight, Orientation.ORIENTATION_LANDSCAPE_RIGHT, roi);
+            mTimestamp = mMetrics.onFrameSubmitted();
+            mRecognizerRunner.recognizeVideoImage(img, Camera1Activity.this);
+            return true;
+        }
+    });
+
+    private final RecognitionMetrics mMetrics = new RecognitionMetrics();
+    /** Crops frames to the region in which recognizers have recently found something. */
+    private final RoiTracker mRoiTracker = new RoiTracker();
+    /**
+     * Rejects frames which can not be recognized before they reach the recognizer, default
+     * thresholds reject only fully clipped frames.
+     */
+    private final FrameQualityGate mQualityGate = new LumaQualityGate();
+    /** Adapts the preview frame rate to the recognition latency, null if camera is not opened. */
+    private CaptureRateController mRateController;
+    /** Preview FPS ranges supported by the camera, scaled by 1000. */
+    private List<int[]> mSupportedFpsRanges;
     private long mTimestamp;
     private TextView mTvResult;
 
@@ -77,6 +114,7 @@ public class Camera1Activity extends Activity implements ScanResultListener, Sur
                 finish();
             }
         });
+        mRecognizerRunner.setMetadataCallbacks(mRoiTracker.createMetadataCallbacks());
 
         mSurfaceView.getHolder().addCallback(this);
     }
@@ -118,9 +156,20 @@ public class Camera1Activity extends Activity implements ScanResultListener, Sur
 
             mCamera.setParameters(params);
 
-            mPixelBuffer = new byte[bestSize.width * bestSize.height * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8];
-            mCamera.addCallbackBuffer(mPixelBuffer);
-            mCamera.setPreviewCallbackWithBuffer(this);
+            mSupportedFpsRanges = params.getSupportedPreviewFpsRange();
+            if (mSupportedFpsRanges != null && !mSupportedFpsRanges.isEmpty()) {
+                int[][] availableRanges = new int[mSupportedFpsRanges.size()][];
+                for (int i = 0; i < availableRanges.length; ++i) {
+                    int[] range = mSupportedFpsRanges.get(i);
+                    availableRanges[i] = new int[] {
+                            range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX] / 1000,
+                            range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000
+                    };
+                }
+                mRateController = new CaptureRateController(availableRanges, CaptureRateController.DEFAULT_MIN_PREVIEW_FPS, mFpsRangeListener);
+            }
+
+            mBufferPool.attach(mCamera, mFrameWidth, mFrameHeight);
 
             mCamera.setPreviewDisplay(mSurfaceView.getHolder());
 
@@ -139,6 +188,9 @@ public class Camera1Activity extends Activity implements ScanResultListener, Sur
     protected void onPause() {
         super.onPause();
         if (mCamera != null) {
+            mBufferPool.detach();
+            mRoiTracker.reset();
+            mRateController = null;
             mCamera.stopPreview();
             mCamera.release();
             mCamera = null;
@@ -151,13 +203,54 @@ public class Camera1Activity extends Activity implements ScanResultListener, Sur
         if (mRecognizerRunner != null) {
             mRecognizerRunner.terminate();
         }
+        // camera is already released in onPause, buffer is given to the next camera in attach
+        mBufferPool.reclaimFrame();
+        Log.i(TAG, "Recognition metrics: " + mMetrics);
+        Log.i(TAG, "Frame quality: " + mQualityGate);
         mSurfaceView.getHolder().removeCallback(this);
     }
 
+    private final CaptureRateController.Listener mFpsRangeListener = new CaptureRateController.Listener() {
+        @Override
+        public void onFpsRangeChanged(final int minFps, final int maxFps) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    applyFpsRange(minFps, maxFps);
+                }
+            });
+        }
+    };
+
+    private void applyFpsRange(int minFps, int maxFps) {
+        if (mCamera == null || mSupportedFpsRanges == null) {
+            return;
+        }
+        // find the original range, scaled values are not necessarily multiples of 1000
+        for (int[] range : mSupportedFpsRanges) {
+            if (range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX] / 1000 == minFps
+                    && range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000 == maxFps) {
+                Log.i(TAG, "Changing FPS range to [" + minFps + ", " + maxFps + "]");
+                Camera.Parameters params = mCamera.getParameters();
+                params.setPreviewFpsRange(range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX], range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+                mCamera.setParameters(params);
+                return;
+            }
+        }
+    }
+
     @Override
     public void onScanningDone(@NonNull RecognitionSuccessType successType) {
-        long timePassed = System.currentTimeMillis() - mTimestamp;
-        Log.w(TAG, "Frame processing took " + timePassed + " ms");
+        long timePassed = mMetrics.onRecognitionDone(successType, mTimestamp);
+        Log.w(TAG, "Frame processing took " + TimeUnit.NANOSECONDS.toMillis(timePassed) + " ms");
+        mRoiTracker.onFrameRecognized();
+        CaptureRateController rateController = mRateController;
+        if (rateController != null) {
+            rateController.onRecognitionDone(timePassed);
+        }
+
+        // native side is done with the frame, give buffer back to the camera
+        mBufferPool.releaseFrame();
 
         // check if results contain valid data
         if (successType != RecognitionSuccessType.UNSUCCESSFUL) {
@@ -168,14 +261,6 @@ public class Camera1Activity extends Activity implements ScanResultListener, Sur
                     mTvResult.setText(s);
                 }
             });
-            // ask for another frame
-            if (mCamera != null) {
-                mCamera.addCallbackBuffer(mPixelBuffer);
-            }
-        } else {
-            if (mCamera != null) {
-                mCamera.addCallbackBuffer(mPixelBuffer);
-            }
         }
     }
 
@@ -200,17 +285,4 @@ public class Camera1Activity extends Activity implements ScanResultListener, Sur
     public void surfaceDestroyed(SurfaceHolder holder) {
         mHaveSurfaceView = false;
     }
-
-    @Override
-    public void onPreviewFrame(byte[] data, Camera camera) {
-        if (mRecognizerRunner.getCurrentState() == RecognizerRunner.State.READY) {
-            // create image
-            InputImage img = ImageBuilder.buildInputImageFromCamera1NV21Frame(data, mFrameWidth, mFrameHeight, Orientation.ORIENTATION_LANDSCAPE_RIGHT, null);
-            mTimestamp = System.currentTimeMillis();
-            mRecognizerRunner.recognizeVideoImage(img, this);
-        } else {
-            // just ask for another frame
-            camera.addCallbackBuffer(data);
-        }
-    }
 }
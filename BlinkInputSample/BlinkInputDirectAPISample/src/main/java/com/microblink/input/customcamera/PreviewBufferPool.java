@@ -0,0 +1,173 @@
+package com.microblink.input.customcamera;
+
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Pool of NV21 callback buffers for {@link Camera#setPreviewCallbackWithBuffer(Camera.PreviewCallback)}.
+ * <p>
+ * Pool keeps several buffers queued in the camera, so camera always has a buffer to fill while
+ * recognition is running. Only the newest frame is given to the {@link FrameConsumer} and it is
+ * given without copying - consumer receives the same array camera has written into. Superseded
+ * frames and frames released by the consumer are immediately returned to the camera.
+ */
+@SuppressWarnings("deprecation")
+final class PreviewBufferPool implements Camera.PreviewCallback {
+
+    /**
+     * Consumer of frames produced by the {@link PreviewBufferPool}.
+     */
+    interface FrameConsumer {
+        /**
+         * Called on the main thread with the newest available frame.
+         *
+         * @param frame Buffer containing camera frame in NV21 format.
+         * @return true if frame has been taken for processing. In that case {@link #releaseFrame()}
+         *         must be called once the buffer is not used anymore. If false is returned, buffer is
+         *         immediately returned to the camera.
+         */
+        boolean onFrameAvailable(@NonNull byte[] frame);
+    }
+
+    /**
+     * Default number of buffers: one being recognized, one waiting for the recognizer and one
+     * that camera is writing into.
+     */
+    static final int DEFAULT_NUM_BUFFERS = 3;
+
+    private final int mNumBuffers;
+    private final FrameConsumer mFrameConsumer;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<byte[]> mBuffers = new ArrayList<>();
+
+    /** Camera buffers are queued to, null if pool is detached. */
+    private Camera mCamera;
+    /** Buffer that is currently owned by the consumer. */
+    private byte[] mFrameInProcessing;
+    /** Newest frame which waits for the consumer to release the current one. */
+    private byte[] mPendingFrame;
+
+    /**
+     * @param numBuffers    Number of buffers in the pool. Values smaller than 2 are raised to 2.
+     * @param frameConsumer Consumer that will receive the newest frames.
+     */
+    PreviewBufferPool(int numBuffers, @NonNull FrameConsumer frameConsumer) {
+        mNumBuffers = Math.max(numBuffers, 2);
+        mFrameConsumer = frameConsumer;
+    }
+
+    /**
+     * Queues pool buffers to the given camera and registers the pool as its preview callback. Buffers
+     * are allocated only if frame size has changed since the last attach.
+     *
+     * @param camera      Camera whose preview is already configured for NV21 format.
+     * @param frameWidth  Preview width.
+     * @param frameHeight Preview height.
+     */
+    synchronized void attach(@NonNull Camera camera, int frameWidth, int frameHeight) {
+        int bufferSize = frameWidth * frameHeight * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8;
+        if (mBuffers.isEmpty() || mBuffers.get(0).length != bufferSize) {
+            mBuffers.clear();
+            // buffer still used by the recognizer must not be given to the new camera
+            mFrameInProcessing = null;
+            for (int i = 0; i < mNumBuffers; ++i) {
+                mBuffers.add(new byte[bufferSize]);
+            }
+        }
+
+        mCamera = camera;
+        mPendingFrame = null;
+        for (byte[] buffer : mBuffers) {
+            if (buffer != mFrameInProcessing) {
+                camera.addCallbackBuffer(buffer);
+            }
+        }
+        camera.setPreviewCallbackWithBuffer(this);
+    }
+
+    /**
+     * Detaches pool from the camera. Must be called before camera is released.
+     */
+    synchronized void detach() {
+        if (mCamera != null) {
+            mCamera.setPreviewCallbackWithBuffer(null);
+            mCamera = null;
+        }
+        mPendingFrame = null;
+        mHandler.removeCallbacks(mDispatchPendingFrame);
+    }
+
+    /**
+     * Takes back the buffer owned by the consumer without waiting for it to be released. Must be
+     * called once the recognizer has been terminated, as terminated recognition does not necessarily
+     * complete and the buffer would otherwise never be given to the camera again.
+     */
+    synchronized void reclaimFrame() {
+        mFrameInProcessing = null;
+        mPendingFrame = null;
+        mHandler.removeCallbacks(mDispatchPendingFrame);
+    }
+
+    @Override
+    public synchronized void onPreviewFrame(byte[] data, Camera camera) {
+        if (camera != mCamera) {
+            return;
+        }
+        if (mFrameInProcessing == null) {
+            dispatchFrame(data);
+        } else {
+            // newer frame supersedes the one that was waiting for the recognizer
+            returnToCamera(mPendingFrame);
+            mPendingFrame = data;
+        }
+    }
+
+    /**
+     * Returns the buffer currently owned by the consumer back to the camera. If newer frame has
+     * arrived in the meantime, it will be given to the consumer. Can be called from any thread.
+     */
+    synchronized void releaseFrame() {
+        returnToCamera(mFrameInProcessing);
+        mFrameInProcessing = null;
+        if (mPendingFrame != null) {
+            // do not give next frame to consumer from within its own completion callback
+            mHandler.post(mDispatchPendingFrame);
+        }
+    }
+
+    private final Runnable mDispatchPendingFrame = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (PreviewBufferPool.this) {
+                if (mFrameInProcessing != null || mPendingFrame == null) {
+                    return;
+                }
+                byte[] frame = mPendingFrame;
+                mPendingFrame = null;
+                dispatchFrame(frame);
+            }
+        }
+    };
+
+    private void dispatchFrame(@NonNull byte[] frame) {
+        mFrameInProcessing = frame;
+        if (!mFrameConsumer.onFrameAvailable(frame) && mFrameInProcessing == frame) {
+            mFrameInProcessing = null;
+            returnToCamera(frame);
+        }
+    }
+
+    private void returnToCamera(byte[] buffer) {
+        if (buffer != null && mCamera != null) {
+            mCamera.addCallbackBuffer(buffer);
+        }
+    }
+
+}
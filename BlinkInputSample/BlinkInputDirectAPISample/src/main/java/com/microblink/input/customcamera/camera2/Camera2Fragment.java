@@ -29,12 +29,12 @@ import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.Image;
-import android.media.ImageReader;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.text.method.ScrollingMovementMethod;
 import android.util.Log;
+import android.util.Range;
 import android.util.Size;
 import android.view.LayoutInflater;
 import android.view.Surface;
@@ -47,10 +47,16 @@ import android.widget.Toast;
 import com.microblink.blinkinput.directApi.DirectApiErrorListener;
 import com.microblink.blinkinput.directApi.RecognizerRunner;
 import com.microblink.blinkinput.entities.recognizers.RecognizerBundle;
+import com.microblink.blinkinput.geometry.Rectangle;
 import com.microblink.blinkinput.hardware.orientation.Orientation;
 import com.microblink.blinkinput.image.ImageBuilder;
 import com.microblink.blinkinput.image.InputImage;
+import com.microblink.blinkinput.metrics.RecognitionMetrics;
 import com.microblink.input.R;
+import com.microblink.input.directapi.CaptureRateController;
+import com.microblink.input.directapi.FrameQualityGate;
+import com.microblink.input.directapi.LumaQualityGate;
+import com.microblink.input.directapi.RoiTracker;
 import com.microblink.input.util.ResultFormater;
 import com.microblink.blinkinput.recognition.RecognitionSuccessType;
 import com.microblink.blinkinput.view.recognition.ScanResultListener;
@@ -87,45 +93,67 @@ public class Camera2Fragment extends Fragment implements ScanResultListener {
     private static final int MAX_PREVIEW_HEIGHT = 1080;
     private RecognizerRunner mRecognizerRunner;
     private RecognizerBundle mRecognizerBundle = new RecognizerBundle();
-    private Image mImageBeingRecognized = null;
+    private final RecognitionMetrics mMetrics = new RecognitionMetrics();
     private long mTimestamp;
     /**
-     * This a callback object for the {@link ImageReader}. "onImageAvailable" will be called when a
-     * still image is ready to be saved.
+     * Crops frames to the region in which recognizers have recently found something.
      */
-    private final ImageReader.OnImageAvailableListener mOnImageAvailableListener
-            = new ImageReader.OnImageAvailableListener() {
-
+    private final RoiTracker mRoiTracker = new RoiTracker();
+    /**
+     * Rejects frames which can not be recognized before they reach the recognizer, default
+     * thresholds reject only fully clipped frames.
+     */
+    private final FrameQualityGate mQualityGate = new LumaQualityGate();
+    /**
+     * Adapts the camera frame rate to the recognition latency, null if camera does not report
+     * supported FPS ranges.
+     */
+    private CaptureRateController mRateController;
+    /**
+     * Applies the frame rate chosen by {@link #mRateController} to the repeating request.
+     */
+    private final CaptureRateController.Listener mFpsRangeListener = new CaptureRateController.Listener() {
         @Override
-        public void onImageAvailable(ImageReader reader) {
-            Image img = null;
-            try {
-                img = reader.acquireNextImage();
-                if (img != null) {
-                    if (mRecognizerRunner.getCurrentState() == RecognizerRunner.State.READY) {
-                        mImageBeingRecognized = img;
-                        InputImage image = ImageBuilder.buildInputImageFromCamera2Image(mImageBeingRecognized, Orientation.ORIENTATION_LANDSCAPE_RIGHT, null);
-                        Log.i(TAG, "Starting recognition");
-                        mTimestamp = System.currentTimeMillis();
-                        mRecognizerRunner.recognizeVideoImage(image, Camera2Fragment.this);
-                    } else {
-                        Log.v(TAG, "RecognizerRunner is busy. Dropping current frame");
-                        img.close();
-                        // request another frame
-                        mCaptureSession.capture(mFrameRequest, null, mBackgroundHandler);
-                    }
-                }
-            } catch (Exception e) {
-                if (img != null) {
-                    img.close();
-                }
-                try {
-                    // request frame to image reader
-                    mCaptureSession.capture(mFrameRequest, null, mBackgroundHandler);
-                } catch (Exception exc) {
-                    Log.w(TAG, "Failed to capture another frame for ImageReader");
+        public void onFpsRangeChanged(final int minFps, final int maxFps) {
+            Handler backgroundHandler = mBackgroundHandler;
+            if (backgroundHandler == null) {
+                return;
+            }
+            backgroundHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    updateFpsRange(minFps, maxFps);
                 }
+            });
+        }
+    };
+    /**
+     * This a callback object for the {@link FrameRing}. "onFrameAvailable" will be called with the
+     * newest camera frame whenever recognizer is free to process it.
+     */
+    private final FrameRing.FrameConsumer mFrameConsumer = new FrameRing.FrameConsumer() {
+
+        @Override
+        public boolean onFrameAvailable(@NonNull Image frame) {
+            if (mRecognizerRunner.getCurrentState() != RecognizerRunner.State.READY) {
+                Log.v(TAG, "RecognizerRunner is busy. Dropping current frame");
+                mMetrics.onFrameDropped();
+                return false;
+            }
+            // first plane of YUV_420_888 image is luma with pixel stride of 1
+            Image.Plane lumaPlane = frame.getPlanes()[0];
+            FrameQualityGate.Verdict verdict = mQualityGate.evaluate(lumaPlane.getBuffer(), frame.getWidth(), frame.getHeight(), lumaPlane.getRowStride());
+            if (verdict != FrameQualityGate.Verdict.ACCEPTED) {
+                Log.v(TAG, "Rejecting frame: " + verdict);
+                mMetrics.onFrameRejected();
+                return false;
             }
+            Rectangle roi = mRoiTracker.getRegionOfInterest(frame.getWidth(), frame.getHeight());
+            InputImage image = ImageBuilder.buildInputImageFromCamera2Image(frame, Orientation.ORIENTATION_LANDSCAPE_RIGHT, roi);
+            Log.i(TAG, "Starting recognition");
+            mTimestamp = mMetrics.onFrameSubmitted();
+            mRecognizerRunner.recognizeVideoImage(image, Camera2Fragment.this);
+            return true;
         }
 
     };
@@ -163,9 +191,10 @@ public class Camera2Fragment extends Fragment implements ScanResultListener {
      */
     private Handler mBackgroundHandler;
     /**
-     * An {@link ImageReader} that handles still image capture.
+     * A {@link FrameRing} that receives frames from the repeating request and hands the newest one
+     * to the recognizer.
      */
-    private ImageReader mImageReader;
+    private FrameRing mFrameRing;
     /**
      * {@link CaptureRequest.Builder} for the camera preview
      */
@@ -175,10 +204,6 @@ public class Camera2Fragment extends Fragment implements ScanResultListener {
      */
     private CaptureRequest mPreviewRequest;
 
-    /**
-     * Capture request for getting frame to ImageReader.
-     */
-    private CaptureRequest mFrameRequest;
     /**
      * A {@link Semaphore} to prevent the app from exiting before closing the camera.
      */
@@ -319,6 +344,7 @@ public class Camera2Fragment extends Fragment implements ScanResultListener {
                 getActivity().finish();
             }
         });
+        mRecognizerRunner.setMetadataCallbacks(mRoiTracker.createMetadataCallbacks());
     }
 
     @Override
@@ -350,6 +376,8 @@ public class Camera2Fragment extends Fragment implements ScanResultListener {
         if (mRecognizerRunner != null) {
             mRecognizerRunner.terminate();
         }
+        Log.i(TAG, "Recognition metrics: " + mMetrics);
+        Log.i(TAG, "Frame quality: " + mQualityGate);
     }
 
     /**
@@ -428,8 +456,18 @@ public class Camera2Fragment extends Fragment implements ScanResultListener {
 
                 Log.i(TAG, "Preview size is " + mPreviewSize.toString());
 
-                mImageReader = ImageReader.newInstance(mPreviewSize.getWidth(), mPreviewSize.getHeight(), ImageFormat.YUV_420_888, /*maxImages*/1);
-                mImageReader.setOnImageAvailableListener(mOnImageAvailableListener, mBackgroundHandler);
+                mFrameRing = new FrameRing(mPreviewSize.getWidth(), mPreviewSize.getHeight(), FrameRing.DEFAULT_NUM_SLOTS, mBackgroundHandler, mFrameConsumer);
+
+                Range<Integer>[] fpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+                if (fpsRanges != null && fpsRanges.length > 0) {
+                    int[][] availableRanges = new int[fpsRanges.length][];
+                    for (int i = 0; i < fpsRanges.length; ++i) {
+                        availableRanges[i] = new int[] {fpsRanges[i].getLower(), fpsRanges[i].getUpper()};
+                    }
+                    mRateController = new CaptureRateController(availableRanges, CaptureRateController.DEFAULT_MIN_PREVIEW_FPS, mFpsRangeListener);
+                } else {
+                    mRateController = null;
+                }
 
                 // We fit the aspect ratio of TextureView to the size of preview we picked.
                 int orientation = getResources().getConfiguration().orientation;
@@ -490,10 +528,11 @@ public class Camera2Fragment extends Fragment implements ScanResultListener {
                 mCameraDevice.close();
                 mCameraDevice = null;
             }
-            if (null != mImageReader) {
-                mImageReader.close();
-                mImageReader = null;
+            if (null != mFrameRing) {
+                mFrameRing.close();
+                mFrameRing = null;
             }
+            mRoiTracker.reset();
         } catch (InterruptedException e) {
             throw new RuntimeException("Interrupted while trying to lock camera closing.", e);
         } finally {
@@ -541,10 +580,11 @@ public class Camera2Fragment extends Fragment implements ScanResultListener {
             // We set up a CaptureRequest.Builder with the output Surface.
             mPreviewRequestBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
             mPreviewRequestBuilder.addTarget(surface);
-//            mPreviewRequestBuilder.addTarget(mImageReader.getSurface());
+            // frames for recognition are streamed by the same repeating request
+            mPreviewRequestBuilder.addTarget(mFrameRing.getSurface());
 
             // Here, we create a CameraCaptureSession for camera preview.
-            mCameraDevice.createCaptureSession(Arrays.asList(surface, mImageReader.getSurface()),
+            mCameraDevice.createCaptureSession(Arrays.asList(surface, mFrameRing.getSurface()),
                     new CameraCaptureSession.StateCallback() {
 
                         @Override
@@ -561,18 +601,11 @@ public class Camera2Fragment extends Fragment implements ScanResultListener {
                                 mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
                                 mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
 
-                                // Finally, we start displaying the camera preview.
+                                // Finally, we start displaying the camera preview and streaming
+                                // frames into the frame ring.
                                 mPreviewRequest = mPreviewRequestBuilder.build();
                                 mCaptureSession.setRepeatingRequest(mPreviewRequest, null, mBackgroundHandler);
 
-                                // also prepare capture request for ImageReader
-                                mPreviewRequestBuilder.addTarget(mImageReader.getSurface());
-                                mFrameRequest = mPreviewRequestBuilder.build();
-                                mPreviewRequestBuilder.removeTarget(mImageReader.getSurface());
-
-                                // request frame to image reader
-                                mCaptureSession.capture(mFrameRequest, null, mBackgroundHandler);
-
                             } catch (CameraAccessException e) {
                                 e.printStackTrace();
                             }
@@ -589,6 +622,24 @@ public class Camera2Fragment extends Fragment implements ScanResultListener {
         }
     }
 
+    /**
+     * Restarts the repeating request with the given target FPS range. Called on the background thread.
+     */
+    private void updateFpsRange(int minFps, int maxFps) {
+        if (null == mCaptureSession || null == mPreviewRequestBuilder) {
+            return;
+        }
+        Log.i(TAG, "Changing FPS range to [" + minFps + ", " + maxFps + "]");
+        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, new Range<>(minFps, maxFps));
+        try {
+            mPreviewRequest = mPreviewRequestBuilder.build();
+            mCaptureSession.setRepeatingRequest(mPreviewRequest, null, mBackgroundHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            // session has been closed in the meantime
+            Log.w(TAG, "Failed to update FPS range", e);
+        }
+    }
+
     /**
      * Shows a {@link Toast} on the UI thread.
      *
@@ -641,10 +692,19 @@ public class Camera2Fragment extends Fragment implements ScanResultListener {
 
     @Override
     public void onScanningDone(@NonNull RecognitionSuccessType successType) {
-        long timePassed = System.currentTimeMillis() - mTimestamp;
-        Log.w(TAG, "Frame processing took " + timePassed + " ms");
+        long timePassed = mMetrics.onRecognitionDone(successType, mTimestamp);
+        Log.w(TAG, "Frame processing took " + TimeUnit.NANOSECONDS.toMillis(timePassed) + " ms");
+        mRoiTracker.onFrameRecognized();
+        CaptureRateController rateController = mRateController;
+        if (rateController != null) {
+            rateController.onRecognitionDone(timePassed);
+        }
 
-        mImageBeingRecognized.close();
+        // return the frame to the ring, newest frame that arrived in the meantime will be recognized next
+        FrameRing frameRing = mFrameRing;
+        if (frameRing != null) {
+            frameRing.releaseFrame();
+        }
 
         if ( successType != RecognitionSuccessType.UNSUCCESSFUL ) {
             final String s = ResultFormater.stringifyRecognitionResults(mRecognizerBundle.getRecognizers());
@@ -654,19 +714,6 @@ public class Camera2Fragment extends Fragment implements ScanResultListener {
                     mTvResult.setText(s);
                 }
             });
-            try {
-                // request frame to image reader
-                mCaptureSession.capture(mFrameRequest, null, mBackgroundHandler);
-            } catch (Exception exc) {
-                Log.w(TAG, "Failed to capture another frame for ImageReader");
-            }
-        } else {
-            try {
-                // request frame to image reader
-                mCaptureSession.capture(mFrameRequest, null, mBackgroundHandler);
-            } catch (Exception exc) {
-                Log.w(TAG, "Failed to capture another frame for ImageReader");
-            }
         }
     }
 
@@ -0,0 +1,174 @@
+package com.microblink.input.customcamera.camera2;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.util.Log;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Frame source for Camera2 API which is fed by a repeating capture request and holds camera frames
+ * in a ring of {@link ImageReader} slots.
+ * <p>
+ * Only the newest frame is ever given to the {@link FrameConsumer}. At most two frames are kept
+ * outside of the reader: the one that is currently being recognized and the newest one that waits
+ * for the recognizer to become free. When a newer frame arrives, the waiting one is closed and its
+ * slot is returned to the camera, so camera HAL always has free buffers to write into, regardless
+ * of how long recognition takes.
+ */
+@androidx.annotation.RequiresApi(api = android.os.Build.VERSION_CODES.LOLLIPOP)
+final class FrameRing implements ImageReader.OnImageAvailableListener {
+
+    /**
+     * Consumer of frames produced by the {@link FrameRing}.
+     */
+    interface FrameConsumer {
+        /**
+         * Called with the newest available frame.
+         *
+         * @param frame Camera frame in {@link ImageFormat#YUV_420_888} format.
+         * @return true if frame has been taken for processing. In that case {@link #releaseFrame()}
+         *         must be called once the frame is not used anymore. If false is returned, frame is
+         *         immediately recycled.
+         */
+        boolean onFrameAvailable(@NonNull Image frame);
+    }
+
+    private static final String TAG = "FrameRing";
+
+    /**
+     * Default number of slots in the ring.
+     */
+    static final int DEFAULT_NUM_SLOTS = 4;
+
+    /**
+     * Minimum number of slots: one for the frame being recognized, one for the frame waiting for the
+     * recognizer and one that {@link ImageReader#acquireLatestImage()} needs to skip stale frames.
+     */
+    private static final int MIN_NUM_SLOTS = 3;
+
+    private final ImageReader mImageReader;
+    private final Handler mHandler;
+    private final FrameConsumer mFrameConsumer;
+
+    /** Frame that is currently owned by the consumer. */
+    private Image mFrameInProcessing;
+    /** Newest frame which waits for the consumer to release the current one. */
+    private Image mPendingFrame;
+    private boolean mClosed = false;
+
+    /**
+     * @param width         Width of the frames.
+     * @param height        Height of the frames.
+     * @param numSlots      Number of image slots in the ring. Values smaller than 3 are raised to 3.
+     * @param handler       Handler on whose thread frames are acquired and given to the consumer.
+     * @param frameConsumer Consumer that will receive the newest frames.
+     */
+    FrameRing(int width, int height, int numSlots, @NonNull Handler handler, @NonNull FrameConsumer frameConsumer) {
+        mHandler = handler;
+        mFrameConsumer = frameConsumer;
+        mImageReader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, Math.max(numSlots, MIN_NUM_SLOTS));
+        mImageReader.setOnImageAvailableListener(this, handler);
+    }
+
+    /**
+     * @return Surface which needs to be added as target of the repeating capture request.
+     */
+    @NonNull
+    Surface getSurface() {
+        return mImageReader.getSurface();
+    }
+
+    @Override
+    public synchronized void onImageAvailable(ImageReader reader) {
+        if (mClosed) {
+            return;
+        }
+        // newer frame supersedes the one that was waiting for the recognizer
+        closePendingFrame();
+
+        Image frame;
+        try {
+            frame = reader.acquireLatestImage();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Failed to acquire frame from ImageReader", e);
+            return;
+        }
+        if (frame == null) {
+            return;
+        }
+
+        if (mFrameInProcessing == null) {
+            dispatchFrame(frame);
+        } else {
+            mPendingFrame = frame;
+        }
+    }
+
+    /**
+     * Returns the frame currently owned by the consumer back to the ring. If newer frame has arrived
+     * in the meantime, it will be given to the consumer. Can be called from any thread.
+     */
+    synchronized void releaseFrame() {
+        if (mFrameInProcessing != null) {
+            mFrameInProcessing.close();
+            mFrameInProcessing = null;
+        }
+        if (mPendingFrame != null && !mClosed) {
+            // do not give next frame to consumer from within its own completion callback
+            mHandler.post(mDispatchPendingFrame);
+        }
+    }
+
+    /**
+     * Closes the ring and all frames held by it. Frames will not be delivered after this call.
+     */
+    synchronized void close() {
+        mClosed = true;
+        mHandler.removeCallbacks(mDispatchPendingFrame);
+        closePendingFrame();
+        // closing the reader also closes the frame that may still be in processing
+        mImageReader.close();
+        mFrameInProcessing = null;
+    }
+
+    private final Runnable mDispatchPendingFrame = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (FrameRing.this) {
+                if (mClosed || mFrameInProcessing != null || mPendingFrame == null) {
+                    return;
+                }
+                Image frame = mPendingFrame;
+                mPendingFrame = null;
+                dispatchFrame(frame);
+            }
+        }
+    };
+
+    private void dispatchFrame(@NonNull Image frame) {
+        mFrameInProcessing = frame;
+        boolean accepted;
+        try {
+            accepted = mFrameConsumer.onFrameAvailable(frame);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Frame consumer failed to process the frame", e);
+            accepted = false;
+        }
+        if (!accepted && mFrameInProcessing == frame) {
+            frame.close();
+            mFrameInProcessing = null;
+        }
+    }
+
+    private void closePendingFrame() {
+        if (mPendingFrame != null) {
+            mPendingFrame.close();
+            mPendingFrame = null;
+        }
+    }
+
+}
@@ -0,0 +1,313 @@
+package com.microblink.input.directapi;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+
+import com.microblink.blinkinput.directApi.RecognizerRunner;
+import com.microblink.blinkinput.hardware.orientation.Orientation;
+import com.microblink.blinkinput.recognition.RecognitionSuccessType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Recognizes a stream of images one after another with the same {@link RecognizerRunner}.
+ * <p>
+ * Items are taken from the iterator and decoded on a background thread just ahead of the
+ * recognizer, so at most {@code lookahead + 2} decoded images are held in memory at any time,
+ * regardless of the number of items. Runner is initialized only once by the caller and is reused
+ * for all items. Results are delivered in the same order as the items were returned by the iterator.
+ * <p>
+ * Intended for recognizing many images picked at once, e.g. with {@code Intent.EXTRA_ALLOW_MULTIPLE}:
+ * <pre>
+ * BatchRecognizer&lt;Uri&gt; batchRecognizer = new BatchRecognizer&lt;&gt;(runner, BatchRecognizer.uriDecoder(getContentResolver()));
+ * batchRecognizer.recognize(uris, Orientation.ORIENTATION_PORTRAIT, itemListener);
+ * </pre>
+ * where {@code runner} has already been initialized with the recognizers whose results the listener
+ * reads. Call {@link #cancel()} when results are not needed anymore and {@link #shutdown()} before
+ * the runner is terminated.
+ *
+ * @param <T> Type of the batch items, e.g. {@link Bitmap}, {@link Uri} or {@link File}.
+ */
+public final class BatchRecognizer<T> {
+
+    private static final String TAG = "BatchRecognizer";
+
+    /** Default number of decoded images waiting for the recognizer. */
+    public static final int DEFAULT_LOOKAHEAD = 2;
+
+    /**
+     * Converts batch item to the image which will be recognized. Invoked on the batch thread.
+     */
+    public interface Decoder<T> {
+        /**
+         * @return Decoded image or null if item could not be decoded.
+         */
+        @Nullable
+        Bitmap decode(@NonNull T item) throws Exception;
+    }
+
+    /**
+     * Receives results of the individual items, in the order of the items.
+     */
+    public interface ItemListener<T> {
+        /**
+         * Called on the recognition thread when item has been recognized. Results are available in
+         * the recognizers the runner was initialized with until this method returns.
+         */
+        void onItemRecognized(int index, @NonNull T item, @NonNull RecognitionSuccessType successType);
+
+        /**
+         * Called when item could not be decoded or recognized.
+         */
+        void onItemFailed(int index, @NonNull T item, @NonNull Throwable throwable);
+
+        /**
+         * Called on the batch thread after the last item has been delivered.
+         *
+         * @param cancelled Whether batch has been stopped with {@link #cancel()} before all items
+         *                  were processed.
+         */
+        void onBatchFinished(boolean cancelled);
+    }
+
+    /**
+     * @return Decoder for batches of already decoded bitmaps.
+     */
+    @NonNull
+    public static Decoder<Bitmap> bitmapDecoder() {
+        return new Decoder<Bitmap>() {
+            @NonNull
+            @Override
+            public Bitmap decode(@NonNull Bitmap item) {
+                return item;
+            }
+        };
+    }
+
+    /**
+     * @return Decoder for batches of content or file URIs, which decodes at the default resolution
+     *         of {@link DownsamplingDecoder}.
+     */
+    @NonNull
+    public static Decoder<Uri> uriDecoder(@NonNull ContentResolver contentResolver) {
+        return uriDecoder(contentResolver, new DownsamplingDecoder());
+    }
+
+    /**
+     * @return Decoder for batches of image files, which decodes at the default resolution of
+     *         {@link DownsamplingDecoder}.
+     */
+    @NonNull
+    public static Decoder<File> fileDecoder() {
+        return fileDecoder(new DownsamplingDecoder());
+    }
+
+    /**
+     * @return Decoder for batches of content or file URIs which decodes at the resolution required
+     *         by the given downsampling decoder.
+     */
+    @NonNull
+    public static Decoder<Uri> uriDecoder(@NonNull final ContentResolver contentResolver, @NonNull final DownsamplingDecoder downsamplingDecoder) {
+        return new Decoder<Uri>() {
+            @Nullable
+            @Override
+            public Bitmap decode(@NonNull Uri item) throws IOException {
+                return downsamplingDecoder.decode(contentResolver, item);
+            }
+        };
+    }
+
+    /**
+     * @return Decoder for batches of image files which decodes at the resolution required by the
+     *         given downsampling decoder.
+     */
+    @NonNull
+    public static Decoder<File> fileDecoder(@NonNull final DownsamplingDecoder downsamplingDecoder) {
+        return new Decoder<File>() {
+            @Nullable
+            @Override
+            public Bitmap decode(@NonNull File item) throws IOException {
+                return downsamplingDecoder.decode(item);
+            }
+        };
+    }
+
+    private final RecognitionQueue mRecognitionQueue;
+    private final Decoder<T> mDecoder;
+    private final ExecutorService mBatchExecutor = Executors.newSingleThreadExecutor();
+    /** Batches which have been started and have not finished yet, guarded by itself. */
+    private final Set<Batch> mActiveBatches = new HashSet<>();
+
+    /**
+     * @param recognizerRunner Initialized recognizer runner.
+     * @param decoder          Decoder used to obtain image for each item.
+     */
+    public BatchRecognizer(@NonNull RecognizerRunner recognizerRunner, @NonNull Decoder<T> decoder) {
+        this(recognizerRunner, decoder, DEFAULT_LOOKAHEAD);
+    }
+
+    /**
+     * @param recognizerRunner Initialized recognizer runner.
+     * @param decoder          Decoder used to obtain image for each item.
+     * @param lookahead        Number of decoded images that may wait for the recognizer.
+     */
+    public BatchRecognizer(@NonNull RecognizerRunner recognizerRunner, @NonNull Decoder<T> decoder, int lookahead) {
+        mRecognitionQueue = new RecognitionQueue(recognizerRunner, lookahead, OverflowPolicy.BLOCK);
+        mDecoder = decoder;
+    }
+
+    /**
+     * Starts recognition of the given items. Returns immediately, iterator is consumed on the batch
+     * thread. Batches started while previous one is still running are processed afterwards.
+     */
+    public void recognize(@NonNull Iterable<T> items, @NonNull Orientation orientation, @NonNull ItemListener<T> listener) {
+        recognize(items.iterator(), orientation, listener);
+    }
+
+    /**
+     * Starts recognition of the given items. Returns immediately, iterator is consumed on the batch
+     * thread. Batches started while previous one is still running are processed afterwards.
+     */
+    public void recognize(@NonNull final Iterator<T> items, @NonNull final Orientation orientation, @NonNull final ItemListener<T> listener) {
+        final Batch batch = new Batch();
+        synchronized (mActiveBatches) {
+            mActiveBatches.add(batch);
+        }
+        mBatchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    processBatch(batch, items, orientation, listener);
+                } finally {
+                    synchronized (mActiveBatches) {
+                        mActiveBatches.remove(batch);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the running batch and all batches waiting for it. Items waiting for recognition are
+     * discarded without notifying the listener, item which is currently being recognized is still
+     * delivered. Item submitted while this method runs is discarded as well, unless its recognition
+     * has already started. Batches started after this call are not affected.
+     */
+    public void cancel() {
+        synchronized (mActiveBatches) {
+            for (Batch batch : mActiveBatches) {
+                batch.mCancelled = true;
+            }
+        }
+        mRecognitionQueue.clear();
+    }
+
+    /**
+     * Cancels the running batch and stops the batch thread. Recognizer can not be used afterwards.
+     */
+    public void shutdown() {
+        cancel();
+        mBatchExecutor.shutdownNow();
+    }
+
+    private void processBatch(@NonNull Batch batch, @NonNull Iterator<T> items, @NonNull Orientation orientation,
+                              @NonNull ItemListener<T> listener) {
+        RecognitionTask lastTask = null;
+        int index = 0;
+        try {
+            while (!batch.mCancelled && items.hasNext()) {
+                T item = items.next();
+                Bitmap bitmap;
+                Throwable decodeFailure = null;
+                try {
+                    bitmap = mDecoder.decode(item);
+                } catch (Exception e) {
+                    bitmap = null;
+                    decodeFailure = e;
+                }
+                if (bitmap == null) {
+                    if (decodeFailure == null) {
+                        decodeFailure = new IllegalStateException("Item " + index + " could not be decoded");
+                    }
+                    Log.w(TAG, "Failed to decode batch item " + index, decodeFailure);
+                    // preserve ordering of the results
+                    awaitTask(lastTask);
+                    listener.onItemFailed(index, item, decodeFailure);
+                } else {
+                    lastTask = mRecognitionQueue.submitBitmap(bitmap, orientation, new ItemCallback(index, item, listener));
+                    if (batch.mCancelled) {
+                        // submission may have waited for space in the queue while the batch was
+                        // being cancelled, so the task got queued after cancel() cleared the queue
+                        lastTask.cancel(false);
+                    }
+                }
+                ++index;
+            }
+            awaitTask(lastTask);
+        } catch (InterruptedException e) {
+            batch.mCancelled = true;
+        }
+        listener.onBatchFinished(batch.mCancelled);
+    }
+
+    private static void awaitTask(@Nullable RecognitionTask task) throws InterruptedException {
+        if (task == null) {
+            return;
+        }
+        try {
+            task.get();
+        } catch (ExecutionException | CancellationException ignored) {
+            // outcome has already been delivered through the task callback
+        }
+    }
+
+    /**
+     * Cancellation state of a single {@link #recognize(Iterator, Orientation, ItemListener)} call, so
+     * starting a new batch does not revive batches cancelled while waiting for the batch thread.
+     */
+    private static final class Batch {
+        volatile boolean mCancelled;
+    }
+
+    private final class ItemCallback implements RecognitionTask.Callback {
+
+        private final int mIndex;
+        private final T mItem;
+        private final ItemListener<T> mListener;
+
+        ItemCallback(int index, @NonNull T item, @NonNull ItemListener<T> listener) {
+            mIndex = index;
+            mItem = item;
+            mListener = listener;
+        }
+
+        @Override
+        public void onTaskDone(@NonNull RecognitionTask task, @NonNull RecognitionSuccessType successType) {
+            mListener.onItemRecognized(mIndex, mItem, successType);
+        }
+
+        @Override
+        public void onTaskDiscarded(@NonNull RecognitionTask task) {
+            // batch has been cancelled
+        }
+
+        @Override
+        public void onTaskFailed(@NonNull RecognitionTask task, @NonNull Throwable throwable) {
+            mListener.onItemFailed(mIndex, mItem, throwable);
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.microblink.input.directapi;
+
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Chooses the camera frame rate based on how fast the device actually recognizes frames.
+ * <p>
+ * Keeps an exponential moving average of recognition latency and selects the supported FPS range
+ * with the lowest upper bound that still delivers a fresh frame whenever the recognizer becomes
+ * free. Slow devices therefore stop capturing frames that would only be dropped, while fast
+ * devices are not limited by a conservative frame rate. Frame rate is never lowered below the
+ * minimum preview frame rate, so preview stays smooth.
+ * <p>
+ * Feed latencies with {@link #onRecognitionDone(long)} and apply the range reported to the
+ * {@link Listener}, e.g. as {@code CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE} or with
+ * {@code Camera.Parameters.setPreviewFpsRange}.
+ */
+public final class CaptureRateController {
+
+    /**
+     * Notified on the thread calling {@link #onRecognitionDone(long)} when a different FPS range
+     * should be used.
+     */
+    public interface Listener {
+        void onFpsRangeChanged(int minFps, int maxFps);
+    }
+
+    /** Default lowest frame rate that will be requested, to keep the preview smooth. */
+    public static final int DEFAULT_MIN_PREVIEW_FPS = 15;
+
+    /** Weight of the newest latency sample in the moving average. */
+    private static final double SMOOTHING_FACTOR = 0.2;
+    /** Number of recognitions before the first change, first frames are slower due to warm up. */
+    private static final int NUM_WARM_UP_SAMPLES = 5;
+    /** Camera should deliver frames this much faster than recognitions complete. */
+    private static final double RATE_HEADROOM = 1.5;
+    /** Range is changed only when target frame rate moves by more than this fraction. */
+    private static final double HYSTERESIS = 0.2;
+
+    private final int[][] mAvailableRanges;
+    private final int mMinPreviewFps;
+    private final Listener mListener;
+
+    private double mAverageLatencyNanos;
+    private int mNumSamples;
+    private double mLastTargetFps;
+    private int[] mCurrentRange;
+
+    /**
+     * @param availableFpsRanges FPS ranges supported by the camera, each as {@code {min, max}} in
+     *                           frames per second.
+     * @param minPreviewFps      Lowest frame rate that will be requested.
+     * @param listener           Listener which applies the chosen range to the camera.
+     */
+    public CaptureRateController(@NonNull int[][] availableFpsRanges, int minPreviewFps, @NonNull Listener listener) {
+        if (availableFpsRanges.length == 0) {
+            throw new IllegalArgumentException("At least one FPS range is required");
+        }
+        mAvailableRanges = availableFpsRanges;
+        mMinPreviewFps = minPreviewFps;
+        mListener = listener;
+    }
+
+    /**
+     * Records latency of a completed recognition and notifies the listener if frame rate should
+     * be changed.
+     *
+     * @param latencyNanos Time between frame submission and recognition completion.
+     */
+    public void onRecognitionDone(long latencyNanos) {
+        if (latencyNanos <= 0) {
+            return;
+        }
+        int[] newRange;
+        synchronized (this) {
+            if (mNumSamples == 0) {
+                mAverageLatencyNanos = latencyNanos;
+            } else {
+                mAverageLatencyNanos += SMOOTHING_FACTOR * (latencyNanos - mAverageLatencyNanos);
+            }
+            if (++mNumSamples < NUM_WARM_UP_SAMPLES) {
+                return;
+            }
+            double targetFps = RATE_HEADROOM * TimeUnit.SECONDS.toNanos(1) / mAverageLatencyNanos;
+            if (mCurrentRange != null && Math.abs(targetFps - mLastTargetFps) <= HYSTERESIS * mLastTargetFps) {
+                return;
+            }
+            mLastTargetFps = targetFps;
+            newRange = chooseRange(Math.max(targetFps, mMinPreviewFps));
+            if (mCurrentRange != null && mCurrentRange[0] == newRange[0] && mCurrentRange[1] == newRange[1]) {
+                return;
+            }
+            mCurrentRange = newRange;
+        }
+        mListener.onFpsRangeChanged(newRange[0], newRange[1]);
+    }
+
+    /**
+     * @return Moving average of the recognition latency in milliseconds.
+     */
+    public synchronized double getAverageLatencyMillis() {
+        return mAverageLatencyNanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Forgets collected latencies, e.g. after camera has been reopened.
+     */
+    public synchronized void reset() {
+        mNumSamples = 0;
+        mAverageLatencyNanos = 0;
+        mLastTargetFps = 0;
+        mCurrentRange = null;
+    }
+
+    /**
+     * Chooses range with the lowest upper bound which is at least the target frame rate. Among
+     * such ranges, the one with the lowest lower bound is preferred so auto exposure can extend
+     * exposure time in low light.
+     */
+    @NonNull
+    private int[] chooseRange(double targetFps) {
+        int[] best = null;
+        int[] fastest = mAvailableRanges[0];
+        for (int[] range : mAvailableRanges) {
+            if (range[1] > fastest[1]) {
+                fastest = range;
+            }
+            if (range[1] < targetFps) {
+                continue;
+            }
+            if (best == null || range[1] < best[1] || (range[1] == best[1] && range[0] < best[0])) {
+                best = range;
+            }
+        }
+        return best != null ? best : fastest;
+    }
+
+}
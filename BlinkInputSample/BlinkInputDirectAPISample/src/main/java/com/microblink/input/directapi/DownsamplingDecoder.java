@@ -0,0 +1,211 @@
+package com.microblink.input.directapi;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import com.microblink.blinkinput.geometry.Rectangle;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Decodes still images only at the resolution the recognizer actually needs.
+ * <p>
+ * Full resolution photos from modern cameras are several times larger than what is needed for
+ * recognition: a 48 MP photo decodes into a ~190 MB ARGB bitmap. This decoder first reads only the
+ * image bounds, then decodes with the largest {@code inSampleSize} that keeps the shorter image
+ * side above the required resolution and scales the rest of the way during decoding. When region
+ * of interest is given, only that part of the image is decoded using {@link BitmapRegionDecoder}.
+ */
+public final class DownsamplingDecoder {
+
+    /**
+     * Shorter side of the decoded image used when recognizers have no specific requirements. This
+     * is twice the resolution of the video frames the recognizers are tuned for.
+     */
+    public static final int DEFAULT_REQUIRED_SHORT_EDGE = 2160;
+
+    private final int mRequiredShortEdge;
+    private Bitmap.Config mPreferredConfig = Bitmap.Config.ARGB_8888;
+    private Rectangle mRegionOfInterest;
+
+    /**
+     * Creates decoder for recognizers without specific resolution requirements.
+     */
+    public DownsamplingDecoder() {
+        this(DEFAULT_REQUIRED_SHORT_EDGE);
+    }
+
+    /**
+     * @param requiredShortEdge Minimum number of pixels along the shorter side of the decoded
+     *                          image (or region of interest). Smaller images are never upscaled.
+     */
+    public DownsamplingDecoder(int requiredShortEdge) {
+        if (requiredShortEdge < 1) {
+            throw new IllegalArgumentException("Required resolution must be positive");
+        }
+        mRequiredShortEdge = requiredShortEdge;
+    }
+
+    /**
+     * Creates decoder for OCR which requires characters to be at least given number of pixels high,
+     * see {@link com.microblink.blinkinput.entities.ocrengine.legacy.BlinkOCREngineOptions#setMinimumCharHeight(int)}.
+     *
+     * @param minimumCharHeight     Minimum character height in pixels required by the OCR engine.
+     * @param smallestCharCoverage  Height of the smallest expected character as a fraction of the
+     *                              image shorter side, in range (0, 1].
+     */
+    @NonNull
+    public static DownsamplingDecoder forMinimumCharHeight(int minimumCharHeight, float smallestCharCoverage) {
+        return new DownsamplingDecoder((int) Math.ceil(minimumCharHeight / smallestCharCoverage));
+    }
+
+    /**
+     * Sets the pixel config of decoded images. Defaults to {@link Bitmap.Config#ARGB_8888}.
+     * {@link Bitmap.Config#RGB_565} halves the memory when recognizers do not rely on colour.
+     */
+    @NonNull
+    public DownsamplingDecoder setPreferredConfig(@NonNull Bitmap.Config preferredConfig) {
+        mPreferredConfig = preferredConfig;
+        return this;
+    }
+
+    /**
+     * Restricts decoding to the given region, defined in relative coordinates. Null decodes the
+     * whole image.
+     */
+    @NonNull
+    public DownsamplingDecoder setRegionOfInterest(@Nullable Rectangle regionOfInterest) {
+        mRegionOfInterest = regionOfInterest;
+        return this;
+    }
+
+    /**
+     * @return Decoded image or null if image format is not supported.
+     */
+    @Nullable
+    public Bitmap decode(@NonNull final ContentResolver contentResolver, @NonNull final Uri uri) throws IOException {
+        return decode(new StreamOpener() {
+            @NonNull
+            @Override
+            public InputStream open() throws IOException {
+                InputStream stream = contentResolver.openInputStream(uri);
+                if (stream == null) {
+                    throw new FileNotFoundException("Failed to open " + uri);
+                }
+                return stream;
+            }
+        });
+    }
+
+    /**
+     * @return Decoded image or null if image format is not supported.
+     */
+    @Nullable
+    public Bitmap decode(@NonNull final File file) throws IOException {
+        return decode(new StreamOpener() {
+            @NonNull
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(file);
+            }
+        });
+    }
+
+    private interface StreamOpener {
+        @NonNull
+        InputStream open() throws IOException;
+    }
+
+    @Nullable
+    private Bitmap decode(@NonNull StreamOpener opener) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream stream = opener.open();
+        try {
+            BitmapFactory.decodeStream(stream, null, options);
+        } finally {
+            stream.close();
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        Rect region = null;
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (mRegionOfInterest != null) {
+            region = toAbsoluteRegion(mRegionOfInterest, width, height);
+            width = region.width();
+            height = region.height();
+        }
+
+        options = createDecodeOptions(Math.min(width, height));
+        stream = opener.open();
+        Bitmap bitmap;
+        try {
+            if (region == null) {
+                bitmap = BitmapFactory.decodeStream(stream, null, options);
+            } else {
+                BitmapRegionDecoder regionDecoder = BitmapRegionDecoder.newInstance(stream, false);
+                try {
+                    // region decoder does not support density scaling, only subsampling is applied
+                    bitmap = regionDecoder.decodeRegion(region, options);
+                } finally {
+                    regionDecoder.recycle();
+                }
+            }
+        } finally {
+            stream.close();
+        }
+        if (bitmap != null) {
+            // density scaling leaves the target density set on the bitmap, which would make views
+            // scale it once more when drawing
+            bitmap.setDensity(Bitmap.DENSITY_NONE);
+        }
+        return bitmap;
+    }
+
+    @NonNull
+    private BitmapFactory.Options createDecodeOptions(int shortEdge) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = mPreferredConfig;
+        int sampleSize = 1;
+        while (shortEdge / (sampleSize * 2) >= mRequiredShortEdge) {
+            sampleSize *= 2;
+        }
+        options.inSampleSize = sampleSize;
+        int sampledShortEdge = shortEdge / sampleSize;
+        if (sampledShortEdge > mRequiredShortEdge) {
+            // scale the remaining factor while decoding instead of creating another bitmap
+            options.inScaled = true;
+            options.inDensity = sampledShortEdge;
+            options.inTargetDensity = mRequiredShortEdge;
+        }
+        return options;
+    }
+
+    @NonNull
+    private static Rect toAbsoluteRegion(@NonNull Rectangle relative, int width, int height) {
+        int left = clamp(Math.round(relative.getX() * width), 0, width - 1);
+        int top = clamp(Math.round(relative.getY() * height), 0, height - 1);
+        int right = clamp(Math.round((relative.getX() + relative.getWidth()) * width), left + 1, width);
+        int bottom = clamp(Math.round((relative.getY() + relative.getHeight()) * height), top + 1, height);
+        return new Rect(left, top, right, bottom);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.microblink.input.directapi;
+
+import java.nio.ByteBuffer;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Cheap check performed on the luma plane of a video frame before it is given to the recognizer.
+ * Frames which can not yield a valid result, e.g. blurred or badly exposed ones, should be rejected
+ * so that full recognition only runs on frames worth processing.
+ * <p>
+ * Implementations must not allocate memory while evaluating frames.
+ */
+public interface FrameQualityGate {
+
+    enum Verdict {
+        /** Frame should be recognized. */
+        ACCEPTED,
+        /** Frame is not sharp enough, e.g. because of motion blur or missing focus. */
+        BLURRY,
+        /** Frame is too dark. */
+        UNDEREXPOSED,
+        /** Frame is too bright or contains too much glare. */
+        OVEREXPOSED
+    }
+
+    /**
+     * Evaluates frame in NV21 format, as produced by the Camera1 API.
+     *
+     * @param nv21   Frame data, luma plane occupies first {@code width * height} bytes.
+     * @param width  Width of the frame in pixels.
+     * @param height Height of the frame in pixels.
+     */
+    @NonNull
+    Verdict evaluate(@NonNull byte[] nv21, int width, int height);
+
+    /**
+     * Evaluates luma plane of the frame, e.g. the first plane of a Camera2 YUV_420_888 image.
+     *
+     * @param luma      Luma plane with pixel stride of 1.
+     * @param width     Width of the frame in pixels.
+     * @param height    Height of the frame in pixels.
+     * @param rowStride Distance between the starts of two consecutive rows, in bytes.
+     */
+    @NonNull
+    Verdict evaluate(@NonNull ByteBuffer luma, int width, int height, int rowStride);
+}
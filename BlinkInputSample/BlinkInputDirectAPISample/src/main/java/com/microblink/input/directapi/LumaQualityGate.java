@@ -0,0 +1,217 @@
+package com.microblink.input.directapi;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * {@link FrameQualityGate} based on luma statistics of a subsampled grid of pixels.
+ * <p>
+ * Sharpness is estimated as the variance of the Laplacian at grid points: blurred frames lack high
+ * frequencies, so their Laplacian is close to zero everywhere. Exposure is estimated from the mean
+ * luma and the fraction of clipped pixels. Only a fixed number of pixels is visited regardless of
+ * the frame size, and evaluation does not allocate.
+ * <p>
+ * Default thresholds only reject frames in which practically all sampled pixels are clipped to
+ * black or white, as such frames have no edges left for the recognizer. They are not calibrated for
+ * any particular document or camera: white paper filling a well lit frame has high mean luma and
+ * many bright pixels, and sharpness of an in-focus frame depends on sensor noise and content. Tune
+ * the thresholds for the use case from {@link #getLastSharpness()} and {@link #getLastMeanLuma()}
+ * measured on representative frames.
+ * <p>
+ * Number of rejections per reason is counted and can be queried from any thread. Gate can be shared
+ * by several frame sources.
+ */
+public final class LumaQualityGate implements FrameQualityGate {
+
+    /** Default minimum Laplacian variance of an accepted frame, blur is not checked by default. */
+    public static final float DEFAULT_MIN_SHARPNESS = 0.f;
+    /** Default minimum mean luma of an accepted frame, mean luma is not checked by default. */
+    public static final int DEFAULT_MIN_MEAN_LUMA = 0;
+    /** Default maximum mean luma of an accepted frame, mean luma is not checked by default. */
+    public static final int DEFAULT_MAX_MEAN_LUMA = 255;
+    /** Default maximum fraction of clipped pixels of an accepted frame. */
+    public static final float DEFAULT_MAX_CLIPPED_FRACTION = 0.95f;
+
+    /** Number of sampled points along each axis of the frame. */
+    private static final int GRID_SIZE = 48;
+    private static final int CLIPPED_DARK = 8;
+    private static final int CLIPPED_BRIGHT = 247;
+
+    private final float mMinSharpness;
+    private final int mMinMeanLuma;
+    private final int mMaxMeanLuma;
+    private final float mMaxClippedFraction;
+
+    private final AtomicLong mFramesAccepted = new AtomicLong();
+    private final AtomicLong mFramesBlurry = new AtomicLong();
+    private final AtomicLong mFramesUnderexposed = new AtomicLong();
+    private final AtomicLong mFramesOverexposed = new AtomicLong();
+
+    private volatile float mLastSharpness;
+    private volatile float mLastMeanLuma;
+
+    public LumaQualityGate() {
+        this(DEFAULT_MIN_SHARPNESS, DEFAULT_MIN_MEAN_LUMA, DEFAULT_MAX_MEAN_LUMA, DEFAULT_MAX_CLIPPED_FRACTION);
+    }
+
+    /**
+     * @param minSharpness       Minimum Laplacian variance of an accepted frame.
+     * @param minMeanLuma        Minimum mean luma of an accepted frame, in range [0, 255].
+     * @param maxMeanLuma        Maximum mean luma of an accepted frame, in range [0, 255].
+     * @param maxClippedFraction Maximum fraction of completely dark or completely bright pixels.
+     */
+    public LumaQualityGate(float minSharpness, int minMeanLuma, int maxMeanLuma, float maxClippedFraction) {
+        mMinSharpness = minSharpness;
+        mMinMeanLuma = minMeanLuma;
+        mMaxMeanLuma = maxMeanLuma;
+        mMaxClippedFraction = maxClippedFraction;
+    }
+
+    @NonNull
+    @Override
+    public Verdict evaluate(@NonNull byte[] nv21, int width, int height) {
+        return evaluate(nv21, null, width, height, width);
+    }
+
+    @NonNull
+    @Override
+    public Verdict evaluate(@NonNull ByteBuffer luma, int width, int height, int rowStride) {
+        return evaluate(null, luma, width, height, rowStride);
+    }
+
+    public long getFramesAccepted() {
+        return mFramesAccepted.get();
+    }
+
+    public long getFramesBlurry() {
+        return mFramesBlurry.get();
+    }
+
+    public long getFramesUnderexposed() {
+        return mFramesUnderexposed.get();
+    }
+
+    public long getFramesOverexposed() {
+        return mFramesOverexposed.get();
+    }
+
+    /**
+     * @return Laplacian variance of the last evaluated frame, useful for tuning the threshold.
+     */
+    public float getLastSharpness() {
+        return mLastSharpness;
+    }
+
+    /**
+     * @return Mean luma of the last evaluated frame.
+     */
+    public float getLastMeanLuma() {
+        return mLastMeanLuma;
+    }
+
+    /**
+     * Clears all counters.
+     */
+    public void reset() {
+        mFramesAccepted.set(0);
+        mFramesBlurry.set(0);
+        mFramesUnderexposed.set(0);
+        mFramesOverexposed.set(0);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "accepted=" + getFramesAccepted()
+                + ", blurry=" + getFramesBlurry()
+                + ", underexposed=" + getFramesUnderexposed()
+                + ", overexposed=" + getFramesOverexposed();
+    }
+
+    /**
+     * Frame is given either as array or as buffer, so the same code reads both without allocating.
+     */
+    @NonNull
+    private Verdict evaluate(@Nullable byte[] array, @Nullable ByteBuffer buffer, int width, int height, int rowStride) {
+        if (width < 3 || height < 3) {
+            return count(Verdict.ACCEPTED);
+        }
+        int stepX = Math.max(1, (width - 2) / GRID_SIZE);
+        int stepY = Math.max(1, (height - 2) / GRID_SIZE);
+
+        long numSamples = 0;
+        long lumaSum = 0;
+        long numDark = 0;
+        long numBright = 0;
+        long laplacianSum = 0;
+        long laplacianSquaredSum = 0;
+        for (int y = 1; y < height - 1; y += stepY) {
+            int row = y * rowStride;
+            for (int x = 1; x < width - 1; x += stepX) {
+                int offset = row + x;
+                int center = lumaAt(array, buffer, offset);
+                int laplacian = 4 * center
+                        - lumaAt(array, buffer, offset - 1) - lumaAt(array, buffer, offset + 1)
+                        - lumaAt(array, buffer, offset - rowStride) - lumaAt(array, buffer, offset + rowStride);
+                laplacianSum += laplacian;
+                laplacianSquaredSum += laplacian * laplacian;
+                lumaSum += center;
+                if (center <= CLIPPED_DARK) {
+                    ++numDark;
+                } else if (center >= CLIPPED_BRIGHT) {
+                    ++numBright;
+                }
+                ++numSamples;
+            }
+        }
+
+        float meanLaplacian = (float) laplacianSum / numSamples;
+        float sharpness = (float) laplacianSquaredSum / numSamples - meanLaplacian * meanLaplacian;
+        float meanLuma = (float) lumaSum / numSamples;
+        mLastSharpness = sharpness;
+        mLastMeanLuma = meanLuma;
+
+        // exposure is checked first, badly exposed frames also appear blurry
+        if (meanLuma < mMinMeanLuma || numDark > mMaxClippedFraction * numSamples) {
+            return count(Verdict.UNDEREXPOSED);
+        }
+        if (meanLuma > mMaxMeanLuma || numBright > mMaxClippedFraction * numSamples) {
+            return count(Verdict.OVEREXPOSED);
+        }
+        if (sharpness < mMinSharpness) {
+            return count(Verdict.BLURRY);
+        }
+        return count(Verdict.ACCEPTED);
+    }
+
+    private static int lumaAt(@Nullable byte[] array, @Nullable ByteBuffer buffer, int offset) {
+        if (array != null) {
+            return array[offset] & 0xFF;
+        }
+        //noinspection ConstantConditions
+        return buffer.get(offset) & 0xFF;
+    }
+
+    @NonNull
+    private Verdict count(@NonNull Verdict verdict) {
+        switch (verdict) {
+            case ACCEPTED:
+                mFramesAccepted.incrementAndGet();
+                break;
+            case BLURRY:
+                mFramesBlurry.incrementAndGet();
+                break;
+            case UNDEREXPOSED:
+                mFramesUnderexposed.incrementAndGet();
+                break;
+            case OVEREXPOSED:
+                mFramesOverexposed.incrementAndGet();
+                break;
+        }
+        return verdict;
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.microblink.input.directapi;
+
+/**
+ * Defines what {@link RecognitionQueue} does when a task is submitted while the queue is full.
+ */
+public enum OverflowPolicy {
+    /** Oldest pending task is discarded to make room for the new one. */
+    DROP_OLDEST,
+    /** Newly submitted task is discarded and pending tasks are kept. */
+    DROP_NEWEST,
+    /** Submitting thread is blocked until there is room in the queue. Not allowed on the main thread. */
+    BLOCK
+}
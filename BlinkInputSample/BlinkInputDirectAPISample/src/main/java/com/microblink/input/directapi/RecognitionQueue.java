@@ -0,0 +1,218 @@
+package com.microblink.input.directapi;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.microblink.blinkinput.directApi.RecognizerRunner;
+import com.microblink.blinkinput.hardware.orientation.Orientation;
+import com.microblink.blinkinput.image.InputImage;
+import com.microblink.blinkinput.recognition.RecognitionSuccessType;
+import com.microblink.blinkinput.view.recognition.ScanResultListener;
+
+import java.util.ArrayDeque;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Non-blocking front end for the {@link RecognizerRunner}.
+ * <p>
+ * {@link RecognizerRunner} throws {@link IllegalStateException} if recognition is requested while
+ * it is still working on the previous image. This queue accepts recognition requests at any time,
+ * keeps up to {@code capacity} of them pending and starts the next one when the previous recognition
+ * is done. When the queue is full, {@link OverflowPolicy} decides which request is dropped.
+ * <p>
+ * The runner must be initialized by the caller before the first task is submitted and must not be
+ * used directly while the queue is in use. Recognitions are started on the main thread, so
+ * {@link OverflowPolicy#BLOCK} can only be used when submitting from other threads.
+ */
+public final class RecognitionQueue {
+
+    private static final String TAG = "RecognitionQueue";
+
+    private final RecognizerRunner mRecognizerRunner;
+    private final int mCapacity;
+    private final OverflowPolicy mOverflowPolicy;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final ArrayDeque<RecognitionTask> mPendingTasks;
+    private RecognitionTask mRunningTask;
+
+    /**
+     * @param recognizerRunner Initialized recognizer runner.
+     * @param capacity         Maximum number of pending tasks, not counting the one being recognized.
+     * @param overflowPolicy   Policy applied when task is submitted while the queue is full.
+     */
+    public RecognitionQueue(@NonNull RecognizerRunner recognizerRunner, int capacity, @NonNull OverflowPolicy overflowPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1");
+        }
+        mRecognizerRunner = recognizerRunner;
+        mCapacity = capacity;
+        mOverflowPolicy = overflowPolicy;
+        mPendingTasks = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Submits video frame for recognition, see {@link RecognizerRunner#recognizeVideoImage(InputImage, ScanResultListener)}.
+     * Image must stay valid until the task is done or discarded.
+     */
+    @NonNull
+    public RecognitionTask submitVideoImage(@NonNull InputImage image, @NonNull RecognitionTask.Callback callback) throws InterruptedException {
+        return enqueue(RecognitionTask.forVideoImage(this, image, callback));
+    }
+
+    /**
+     * Submits still image for recognition, see {@link RecognizerRunner#recognizeStillImage(InputImage, ScanResultListener)}.
+     * Image must stay valid until the task is done or discarded.
+     */
+    @NonNull
+    public RecognitionTask submitStillImage(@NonNull InputImage image, @NonNull RecognitionTask.Callback callback) throws InterruptedException {
+        return enqueue(RecognitionTask.forStillImage(this, image, callback));
+    }
+
+    /**
+     * Submits bitmap for recognition, see {@link RecognizerRunner#recognizeBitmap(Bitmap, Orientation, ScanResultListener)}.
+     */
+    @NonNull
+    public RecognitionTask submitBitmap(@NonNull Bitmap bitmap, @NonNull Orientation orientation, @NonNull RecognitionTask.Callback callback) throws InterruptedException {
+        return enqueue(RecognitionTask.forBitmap(this, bitmap, orientation, callback));
+    }
+
+    /**
+     * @return Number of tasks waiting in the queue.
+     */
+    public synchronized int getPendingCount() {
+        return mPendingTasks.size();
+    }
+
+    /**
+     * Discards all pending tasks. Task that is currently being recognized is not affected.
+     */
+    public void clear() {
+        RecognitionTask[] discarded;
+        synchronized (this) {
+            discarded = mPendingTasks.toArray(new RecognitionTask[0]);
+            mPendingTasks.clear();
+            notifyAll();
+        }
+        for (RecognitionTask task : discarded) {
+            task.finishDiscarded();
+        }
+    }
+
+    boolean remove(@NonNull RecognitionTask task) {
+        synchronized (this) {
+            if (!mPendingTasks.remove(task)) {
+                return false;
+            }
+            notifyAll();
+        }
+        task.finishDiscarded();
+        return true;
+    }
+
+    @NonNull
+    private RecognitionTask enqueue(@NonNull RecognitionTask task) throws InterruptedException {
+        RecognitionTask discarded = null;
+        synchronized (this) {
+            if (mPendingTasks.size() >= mCapacity) {
+                switch (mOverflowPolicy) {
+                    case DROP_OLDEST:
+                        discarded = mPendingTasks.poll();
+                        break;
+                    case DROP_NEWEST:
+                        discarded = task;
+                        break;
+                    case BLOCK:
+                        if (Looper.myLooper() == Looper.getMainLooper()) {
+                            // pending tasks are dispatched on the main thread, waiting there would never end
+                            throw new IllegalStateException("OverflowPolicy.BLOCK can not be used from the main thread");
+                        }
+                        while (mPendingTasks.size() >= mCapacity) {
+                            wait();
+                        }
+                        break;
+                }
+            }
+            if (discarded != task) {
+                mPendingTasks.add(task);
+                scheduleDispatch();
+            }
+        }
+        if (discarded != null) {
+            discarded.finishDiscarded();
+        }
+        return task;
+    }
+
+    private void scheduleDispatch() {
+        mMainHandler.removeCallbacks(mDispatch);
+        mMainHandler.post(mDispatch);
+    }
+
+    private final Runnable mDispatch = new Runnable() {
+        @Override
+        public void run() {
+            RecognitionTask task;
+            synchronized (RecognitionQueue.this) {
+                // next task is dispatched when the running one finishes, see onTaskFinished
+                if (mRunningTask != null || mPendingTasks.isEmpty()) {
+                    return;
+                }
+                task = mPendingTasks.poll();
+                mRunningTask = task;
+                RecognitionQueue.this.notifyAll();
+            }
+
+            try {
+                task.start(mRecognizerRunner, new TaskResultListener(task));
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to start recognition", e);
+                onTaskFinished(task);
+                task.finishFailed(e);
+            }
+        }
+    };
+
+    private void onTaskFinished(@NonNull RecognitionTask task) {
+        synchronized (this) {
+            if (mRunningTask == task) {
+                mRunningTask = null;
+            }
+            if (!mPendingTasks.isEmpty()) {
+                scheduleDispatch();
+            }
+        }
+    }
+
+    private final class TaskResultListener implements ScanResultListener {
+
+        private final RecognitionTask mTask;
+
+        TaskResultListener(@NonNull RecognitionTask task) {
+            mTask = task;
+        }
+
+        @Override
+        public void onScanningDone(@NonNull RecognitionSuccessType recognitionSuccessType) {
+            // callback is invoked before the next task is started so it can safely read the results
+            try {
+                mTask.finishDone(recognitionSuccessType);
+            } finally {
+                onTaskFinished(mTask);
+            }
+        }
+
+        @Override
+        public void onUnrecoverableError(@NonNull Throwable throwable) {
+            try {
+                mTask.finishFailed(throwable);
+            } finally {
+                onTaskFinished(mTask);
+            }
+        }
+    }
+
+}
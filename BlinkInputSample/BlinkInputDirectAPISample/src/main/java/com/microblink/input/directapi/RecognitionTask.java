@@ -0,0 +1,202 @@
+package com.microblink.input.directapi;
+
+import android.graphics.Bitmap;
+
+import com.microblink.blinkinput.directApi.RecognizerRunner;
+import com.microblink.blinkinput.hardware.orientation.Orientation;
+import com.microblink.blinkinput.image.InputImage;
+import com.microblink.blinkinput.recognition.RecognitionSuccessType;
+import com.microblink.blinkinput.view.recognition.ScanResultListener;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Handle of a single recognition submitted to the {@link RecognitionQueue}.
+ * <p>
+ * Task can be cancelled while it is waiting in the queue. Once recognition has started, it runs to
+ * completion.
+ */
+public final class RecognitionTask implements Future<RecognitionSuccessType> {
+
+    /**
+     * Callback notified about the outcome of the task.
+     */
+    public interface Callback {
+        /**
+         * Called on the recognition thread when recognition has completed. Results are available in
+         * the recognizers until this method returns, next task is started only afterwards.
+         */
+        void onTaskDone(@NonNull RecognitionTask task, @NonNull RecognitionSuccessType successType);
+
+        /**
+         * Called when task has been discarded before it was started, either because it was
+         * cancelled or because of the queue overflow. Image given to the task can be reused.
+         */
+        void onTaskDiscarded(@NonNull RecognitionTask task);
+
+        /**
+         * Called when recognition could not be performed.
+         */
+        void onTaskFailed(@NonNull RecognitionTask task, @NonNull Throwable throwable);
+    }
+
+    public enum State {
+        /** Task waits in the queue. */
+        PENDING,
+        /** Task is being recognized. */
+        RUNNING,
+        /** Recognition has completed. */
+        DONE,
+        /** Task has been cancelled or dropped before it was started. */
+        DISCARDED,
+        /** Recognition has failed. */
+        FAILED
+    }
+
+    private enum Kind {
+        VIDEO_IMAGE,
+        STILL_IMAGE,
+        BITMAP
+    }
+
+    private final RecognitionQueue mQueue;
+    private final Kind mKind;
+    private final InputImage mInputImage;
+    private final Bitmap mBitmap;
+    private final Orientation mOrientation;
+    private final Callback mCallback;
+
+    private final CountDownLatch mFinished = new CountDownLatch(1);
+    private volatile State mState = State.PENDING;
+    private volatile RecognitionSuccessType mSuccessType;
+    private volatile Throwable mFailure;
+
+    private RecognitionTask(@NonNull RecognitionQueue queue, @NonNull Kind kind, @Nullable InputImage inputImage,
+                            @Nullable Bitmap bitmap, @Nullable Orientation orientation, @NonNull Callback callback) {
+        mQueue = queue;
+        mKind = kind;
+        mInputImage = inputImage;
+        mBitmap = bitmap;
+        mOrientation = orientation;
+        mCallback = callback;
+    }
+
+    static RecognitionTask forVideoImage(@NonNull RecognitionQueue queue, @NonNull InputImage image, @NonNull Callback callback) {
+        return new RecognitionTask(queue, Kind.VIDEO_IMAGE, image, null, null, callback);
+    }
+
+    static RecognitionTask forStillImage(@NonNull RecognitionQueue queue, @NonNull InputImage image, @NonNull Callback callback) {
+        return new RecognitionTask(queue, Kind.STILL_IMAGE, image, null, null, callback);
+    }
+
+    static RecognitionTask forBitmap(@NonNull RecognitionQueue queue, @NonNull Bitmap bitmap, @NonNull Orientation orientation,
+                                     @NonNull Callback callback) {
+        return new RecognitionTask(queue, Kind.BITMAP, null, bitmap, orientation, callback);
+    }
+
+    /**
+     * @return Current state of the task.
+     */
+    @NonNull
+    public State getState() {
+        return mState;
+    }
+
+    /**
+     * Removes the task from the queue if it has not been started yet.
+     *
+     * @param mayInterruptIfRunning Ignored, started recognition can not be interrupted.
+     * @return true if task has been discarded by this call.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return mQueue.remove(this);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return mState == State.DISCARDED;
+    }
+
+    @Override
+    public boolean isDone() {
+        State state = mState;
+        return state == State.DONE || state == State.DISCARDED || state == State.FAILED;
+    }
+
+    @Override
+    public RecognitionSuccessType get() throws InterruptedException, ExecutionException {
+        mFinished.await();
+        return getResult();
+    }
+
+    @Override
+    public RecognitionSuccessType get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!mFinished.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResult();
+    }
+
+    private RecognitionSuccessType getResult() throws ExecutionException {
+        switch (mState) {
+            case DISCARDED:
+                throw new CancellationException("Recognition task has been discarded");
+            case FAILED:
+                throw new ExecutionException(mFailure);
+            default:
+                return mSuccessType;
+        }
+    }
+
+    /**
+     * Starts the recognition on the given runner. Called on the queue's dispatch thread.
+     */
+    void start(@NonNull RecognizerRunner runner, @NonNull ScanResultListener listener) {
+        mState = State.RUNNING;
+        switch (mKind) {
+            case VIDEO_IMAGE:
+                runner.recognizeVideoImage(mInputImage, listener);
+                break;
+            case STILL_IMAGE:
+                runner.recognizeStillImage(mInputImage, listener);
+                break;
+            case BITMAP:
+                runner.recognizeBitmap(mBitmap, mOrientation, listener);
+                break;
+        }
+    }
+
+    void finishDone(@NonNull RecognitionSuccessType successType) {
+        mSuccessType = successType;
+        try {
+            mCallback.onTaskDone(this, successType);
+        } finally {
+            // waiters must be released even if the callback throws
+            mState = State.DONE;
+            mFinished.countDown();
+        }
+    }
+
+    void finishDiscarded() {
+        mState = State.DISCARDED;
+        mFinished.countDown();
+        mCallback.onTaskDiscarded(this);
+    }
+
+    void finishFailed(@NonNull Throwable throwable) {
+        mFailure = throwable;
+        mState = State.FAILED;
+        mFinished.countDown();
+        mCallback.onTaskFailed(this, throwable);
+    }
+
+}
@@ -0,0 +1,227 @@
+package com.microblink.input.directapi;
+
+import com.microblink.blinkinput.geometry.Point;
+import com.microblink.blinkinput.geometry.Quadrilateral;
+import com.microblink.blinkinput.geometry.Rectangle;
+import com.microblink.blinkinput.metadata.MetadataCallbacks;
+import com.microblink.blinkinput.metadata.detection.quad.DisplayableQuadDetection;
+import com.microblink.blinkinput.metadata.detection.quad.QuadDetectionCallback;
+import com.microblink.blinkinput.metadata.ocr.DisplayableOcrResult;
+import com.microblink.blinkinput.metadata.ocr.OcrCallback;
+import com.microblink.blinkinput.results.ocr.OcrBlock;
+import com.microblink.blinkinput.results.ocr.OcrResult;
+import com.microblink.blinkinput.view.recognition.DetectionStatus;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Tracks the region of the video frame in which recognizers have found something and crops
+ * subsequent frames to it.
+ * <p>
+ * Detections are reported through {@link MetadataCallbacks} created by {@link #createMetadataCallbacks()},
+ * which must be set to the {@link com.microblink.blinkinput.directApi.RecognizerRunner}. Each frame
+ * should be built with the region returned by {@link #getRegionOfInterest(int, int)} and
+ * {@link #onFrameRecognized()} must be called when its recognition completes. Once a quad
+ * detection or OCR result is reported, next frames are cropped to its bounding box expanded by a
+ * safety margin. After a number of consecutive frames without any detection, tracker falls back to
+ * the full frame.
+ */
+public final class RoiTracker {
+
+    /** Default number of consecutive frames without detection after which full frame is used. */
+    public static final int DEFAULT_MAX_MISSES = 3;
+    /** Default margin added to each side of the detection, relative to the detection size. */
+    public static final float DEFAULT_MARGIN = 0.25f;
+
+    /** Region is not tracked when it would cover almost the whole frame anyway. */
+    private static final float MAX_TRACKED_AREA = 0.8f;
+    /** Smallest tracked region side, relative to the frame. */
+    private static final float MIN_TRACKED_SIZE = 0.2f;
+
+    private final int mMaxMisses;
+    private final float mMargin;
+
+    /** Region used for frames that are built next, null for full frame. */
+    private Rectangle mNextRegion;
+    /** Region of the frame which is currently being recognized, detections are relative to it. */
+    private Rectangle mFrameRegion;
+    private int mFrameWidth;
+    private int mFrameHeight;
+    /** Bounding box of the detections on the current frame, in relative full frame coordinates. */
+    private float mLeft, mTop, mRight, mBottom;
+    private boolean mHasDetection;
+    private int mNumMisses;
+
+    public RoiTracker() {
+        this(DEFAULT_MAX_MISSES, DEFAULT_MARGIN);
+    }
+
+    /**
+     * @param maxMisses Number of consecutive frames without detection after which full frame is used.
+     * @param margin    Margin added to each side of the detection, relative to the detection size.
+     */
+    public RoiTracker(int maxMisses, float margin) {
+        mMaxMisses = maxMisses;
+        mMargin = margin;
+    }
+
+    /**
+     * Creates metadata callbacks which feed the detections to this tracker. Set them to the runner
+     * with {@link com.microblink.blinkinput.directApi.RecognizerRunner#setMetadataCallbacks(MetadataCallbacks)}.
+     */
+    @NonNull
+    public MetadataCallbacks createMetadataCallbacks() {
+        MetadataCallbacks callbacks = new MetadataCallbacks();
+        callbacks.setQuadDetectionCallback(new QuadDetectionCallback() {
+            @Override
+            public void onQuadDetection(@NonNull DisplayableQuadDetection quadDetection) {
+                if (isDocumentDetected(quadDetection.getDetectionStatus())) {
+                    onQuadDetected(quadDetection.getDisplayLocation());
+                }
+            }
+        });
+        callbacks.setOcrCallback(new OcrCallback() {
+            @Override
+            public void onOcrResult(@NonNull DisplayableOcrResult displayableOcrResult) {
+                onOcrResultAvailable(displayableOcrResult.getOcrResult());
+            }
+        });
+        return callbacks;
+    }
+
+    /**
+     * Returns the region to which the next frame should be cropped and remembers it as the region
+     * of the frame being recognized. Must be called once for each frame submitted for recognition.
+     *
+     * @param frameWidth  Width of the frame in pixels.
+     * @param frameHeight Height of the frame in pixels.
+     * @return Region in relative coordinates or null if full frame should be used.
+     */
+    @Nullable
+    public synchronized Rectangle getRegionOfInterest(int frameWidth, int frameHeight) {
+        mFrameWidth = frameWidth;
+        mFrameHeight = frameHeight;
+        mFrameRegion = mNextRegion;
+        mHasDetection = false;
+        return mNextRegion;
+    }
+
+    /**
+     * Updates the tracked region with detections reported during recognition of the current frame.
+     */
+    public synchronized void onFrameRecognized() {
+        if (mHasDetection) {
+            mNumMisses = 0;
+            mNextRegion = expand(mLeft, mTop, mRight, mBottom);
+        } else if (++mNumMisses >= mMaxMisses) {
+            mNextRegion = null;
+        }
+        mHasDetection = false;
+    }
+
+    /**
+     * Discards the tracked region, next frame will be processed in full.
+     */
+    public synchronized void reset() {
+        mNextRegion = null;
+        mFrameRegion = null;
+        mHasDetection = false;
+        mNumMisses = 0;
+    }
+
+    private static boolean isDocumentDetected(@Nullable DetectionStatus status) {
+        if (status == null) {
+            return false;
+        }
+        switch (status) {
+            case SUCCESS:
+            case FALLBACK_SUCCESS:
+            case CAMERA_TOO_CLOSE:
+            case CAMERA_TOO_FAR:
+            case CAMERA_ANGLE_TOO_STEEP:
+                return true;
+            default:
+                // partially visible document must not be cropped further
+                return false;
+        }
+    }
+
+    private synchronized void onQuadDetected(@Nullable Quadrilateral quad) {
+        if (quad == null) {
+            return;
+        }
+        addPoint(quad.getUpperLeft());
+        addPoint(quad.getUpperRight());
+        addPoint(quad.getLowerLeft());
+        addPoint(quad.getLowerRight());
+    }
+
+    private synchronized void onOcrResultAvailable(@Nullable OcrResult ocrResult) {
+        if (ocrResult == null || ocrResult.getBlocks() == null) {
+            return;
+        }
+        for (OcrBlock block : ocrResult.getBlocks()) {
+            Rectangle position = block.getPosition();
+            if (position != null && position.getWidth() > 0 && position.getHeight() > 0) {
+                addPixel(position.getX(), position.getY());
+                addPixel(position.getX() + position.getWidth(), position.getY() + position.getHeight());
+            }
+        }
+    }
+
+    private void addPoint(@Nullable Point point) {
+        if (point != null) {
+            addPixel(point.getX(), point.getY());
+        }
+    }
+
+    /**
+     * Adds point given in pixels of the recognized (possibly cropped) image to the bounding box.
+     */
+    private void addPixel(float x, float y) {
+        if (mFrameWidth <= 0 || mFrameHeight <= 0) {
+            return;
+        }
+        float regionX = 0.f, regionY = 0.f, regionWidth = 1.f, regionHeight = 1.f;
+        if (mFrameRegion != null) {
+            regionX = mFrameRegion.getX();
+            regionY = mFrameRegion.getY();
+            regionWidth = mFrameRegion.getWidth();
+            regionHeight = mFrameRegion.getHeight();
+        }
+        float relativeX = regionX + x / mFrameWidth;
+        float relativeY = regionY + y / mFrameHeight;
+        relativeX = clamp(relativeX, regionX, regionX + regionWidth);
+        relativeY = clamp(relativeY, regionY, regionY + regionHeight);
+        if (!mHasDetection) {
+            mLeft = mRight = relativeX;
+            mTop = mBottom = relativeY;
+            mHasDetection = true;
+        } else {
+            mLeft = Math.min(mLeft, relativeX);
+            mRight = Math.max(mRight, relativeX);
+            mTop = Math.min(mTop, relativeY);
+            mBottom = Math.max(mBottom, relativeY);
+        }
+    }
+
+    @Nullable
+    private Rectangle expand(float left, float top, float right, float bottom) {
+        float marginX = Math.max((right - left) * mMargin, (MIN_TRACKED_SIZE - (right - left)) / 2);
+        float marginY = Math.max((bottom - top) * mMargin, (MIN_TRACKED_SIZE - (bottom - top)) / 2);
+        left = clamp(left - marginX, 0.f, 1.f);
+        top = clamp(top - marginY, 0.f, 1.f);
+        right = clamp(right + marginX, 0.f, 1.f);
+        bottom = clamp(bottom + marginY, 0.f, 1.f);
+        if ((right - left) * (bottom - top) > MAX_TRACKED_AREA) {
+            return null;
+        }
+        return new Rectangle(left, top, right - left, bottom - top);
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+}
@@ -22,7 +22,9 @@ import com.microblink.blinkinput.directApi.RecognizerRunner;
 import com.microblink.blinkinput.entities.recognizers.RecognizerBundle;
 import com.microblink.blinkinput.hardware.orientation.Orientation;
 import com.microblink.input.R;
+import com.microblink.input.directapi.DownsamplingDecoder;
 import com.microblink.blinkinput.recognition.RecognitionSuccessType;
+import com.microblink.blinkinput.storage.BundleStateSaver;
 import com.microblink.blinkinput.view.recognition.ScanResultListener;
 
 import java.io.File;
@@ -36,7 +38,14 @@ import androidx.core.content.FileProvider;
 
 public class ScanImageActivity extends Activity {
 
-    private static final Bitmap.Config BITMAP_CONFIG = Bitmap.Config.ARGB_8888;
+    /** Photos are opaque, so RGB_565 is enough and halves the memory of decoded images. */
+    private static final Bitmap.Config BITMAP_CONFIG = Bitmap.Config.RGB_565;
+
+    /** Minimum character height of the OCR engine, in pixels. */
+    public static final String EXTRA_MINIMUM_CHAR_HEIGHT = "minimumCharHeight";
+
+    /** Height of the smallest expected text as a fraction of the photo's shorter side. */
+    private static final float SMALLEST_CHAR_COVERAGE = 0.01f;
 
     private static final String ASSETS_BITMAP_NAME = "lipsum.png";
 
@@ -58,9 +67,15 @@ public class ScanImageActivity extends Activity {
     /** Bundle that will contain all recognizers that have arrived via Intent */
     private RecognizerBundle mRecognizerBundle;
 
+    /** Saves mRecognizerBundle only when its results have changed */
+    private BundleStateSaver mBundleStateSaver;
+
     /** Current bitmap for recognition. */
     private Bitmap mBitmap;
 
+    /** Decoder for images chosen by the user. */
+    private DownsamplingDecoder mImageDecoder;
+
     private Button mScanButton;
 
     @Override
@@ -77,6 +92,17 @@ public class ScanImageActivity extends Activity {
         // since mRecognizerBundle does not contain any recognizers, loadFromIntent will create
         // new recognizers from intent data and automatically bundle them inside mRecognizerBundle
         mRecognizerBundle.loadFromIntent(intent);
+        mBundleStateSaver = new BundleStateSaver(mRecognizerBundle);
+
+        // decode chosen photos only at the resolution at which the smallest expected text is still
+        // readable by the OCR
+        int minimumCharHeight = intent.getIntExtra(EXTRA_MINIMUM_CHAR_HEIGHT, 0);
+        if (minimumCharHeight > 0) {
+            mImageDecoder = DownsamplingDecoder.forMinimumCharHeight(minimumCharHeight, SMALLEST_CHAR_COVERAGE);
+        } else {
+            mImageDecoder = new DownsamplingDecoder();
+        }
+        mImageDecoder.setPreferredConfig(BITMAP_CONFIG);
 
         loadDefaultBitmapFromAssets();
 
@@ -128,17 +154,6 @@ public class ScanImageActivity extends Activity {
         });
     }
 
-    @Override
-    protected void onResume() {
-        super.onResume();
-        /*
-         * Clear temporary file created in onSaveInstanceState in case no activity restart happened
-         * after call to onSaveInstanceState. If restart happened and temporary file was consumed
-         * by loadFromBundle method in onCreate, then this method will do nothing.
-         */
-        mRecognizerBundle.clearSavedState();
-    }
-
     public void onTakePhotoClick(View view) {
         // Starts built-in camera intent for taking scan images
         Intent takePictureIntent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
@@ -185,6 +200,7 @@ public class ScanImageActivity extends Activity {
         mRecognizerRunner.recognizeBitmap(mBitmap, Orientation.ORIENTATION_LANDSCAPE_RIGHT, new ScanResultListener() {
             @Override
             public void onScanningDone(@NonNull RecognitionSuccessType recognitionSuccessType) {
+                mBundleStateSaver.onContentChanged();
                 if (recognitionSuccessType != RecognitionSuccessType.UNSUCCESSFUL) {
                     // return results (if successful or partial)
                     Intent intent = new Intent();
@@ -222,9 +238,12 @@ public class ScanImageActivity extends Activity {
          * you should save RecognizerBundle's state in your onSaveInstanceState method. This will
          * ensure that bundle is written back to temporary file that will be available for loadFromBundle
          * method if activity gets restarted. However, if no restart occur, you must ensure this
-         * temporary file gets deleted. Therefore, you must call clearSavedState in your onResume callback.
+         * temporary file gets deleted. BundleStateSaver keeps the file while bundle content does not
+         * change, so it is not rewritten on every save, and deletes it when activity finishes.
          */
-        mRecognizerBundle.saveState();
+        if (mBundleStateSaver != null) {
+            mBundleStateSaver.saveState();
+        }
     }
 
     @Override
@@ -236,6 +255,14 @@ public class ScanImageActivity extends Activity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (isFinishing() && mBundleStateSaver != null) {
+            mBundleStateSaver.clearSavedState();
+        }
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode == TAKE_PHOTO_REQUEST_CODE) {
@@ -276,8 +303,8 @@ public class ScanImageActivity extends Activity {
     @Nullable
     private Bitmap loadBitmapFromUri(Uri uri) {
         try {
-            InputStream imageStream = getContentResolver().openInputStream(uri);
-            return BitmapFactory.decodeStream(imageStream);
+            // decode only at the resolution needed by the recognizers instead of full resolution
+            return mImageDecoder.decode(getContentResolver(), uri);
         } catch (Exception e) {
             Log.e(TAG, e.getMessage());
             return null;
@@ -17,6 +17,7 @@ import com.microblink.blinkinput.fragment.overlay.documentcapture.detectionui.De
 import com.microblink.blinkinput.fragment.overlay.documentcapture.detectionui.DetectionOverlayView;
 import com.microblink.blinkinput.fragment.overlay.verification.OverlayTorchStateListener;
 import com.microblink.blinkinput.recognition.RecognitionSuccessType;
+import com.microblink.blinkinput.storage.ResultTransfer;
 import com.microblink.blinkinput.view.recognition.ScanResultListener;
 
 import androidx.annotation.NonNull;
@@ -117,11 +118,18 @@ public class CustomDocumentCaptureActivity extends AppCompatActivity implements
             // pause scanning to prevent new results while activity is being shut down
             recognizerRunnerFragment.getRecognizerRunnerView().pauseScanning();
 
-            Intent intent = new Intent();
-
             switch (recognitionSuccessType) {
                 case SUCCESSFUL:
                 case PARTIAL:
+                    // only result state is read as text, images are kept in memory and converted
+                    // to bitmaps when shown, so results are not written to disk
+                    DocumentCaptureRecognizer.Result result = recognizerTransferable.getDocumentCaptureRecognizer().getResult();
+                    Intent intent = new Intent();
+                    new ResultTransfer.Builder(CustomDocumentCaptureActivity.this)
+                            .putText(MenuActivity.RESULT_STATE, result.getResultState().name())
+                            .putImage(MenuActivity.RESULT_DOCUMENT_IMAGE, result.getFullDocumentImage())
+                            .putImage(MenuActivity.RESULT_FULL_IMAGE, recognizerTransferable.getCapturedFullImage().getImage())
+                            .saveToIntent(intent);
                     setResult(Activity.RESULT_OK, intent);
                     break;
                 case UNSUCCESSFUL:
@@ -129,7 +137,6 @@ public class CustomDocumentCaptureActivity extends AppCompatActivity implements
                     break;
             }
 
-            recognizerTransferable.saveToIntent(intent);
             finish();
         }
 
@@ -3,7 +3,6 @@ package com.microblink.input;
 import android.app.Activity;
 import android.content.Intent;
 import android.content.pm.ActivityInfo;
-import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.widget.Toast;
 
@@ -11,16 +10,13 @@ import com.microblink.blinkinput.BaseMenuActivity;
 import com.microblink.blinkinput.MenuListItem;
 import com.microblink.blinkinput.entities.recognizers.blinkinput.documentcapture.DocumentCaptureRecognizer;
 import com.microblink.blinkinput.entities.recognizers.blinkinput.documentcapture.DocumentCaptureRecognizerTransferable;
-import com.microblink.blinkinput.image.Image;
+import com.microblink.blinkinput.storage.ImageHandoff;
+import com.microblink.blinkinput.storage.ResultTransfer;
 import com.microblink.blinkinput.uisettings.ActivityRunner;
 import com.microblink.blinkinput.uisettings.DocumentCaptureUISettings;
 import com.microblink.blinkinput.util.RecognizerCompatibility;
 import com.microblink.blinkinput.util.RecognizerCompatibilityStatus;
 
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,6 +24,11 @@ public class MenuActivity extends BaseMenuActivity {
 
     public static final int MY_DOCUMENT_CAPTURE_REQUEST_CODE = 123;
 
+    /** Keys of the results returned by {@link CustomDocumentCaptureActivity}. */
+    static final String RESULT_STATE = "resultState";
+    static final String RESULT_DOCUMENT_IMAGE = "documentImage";
+    static final String RESULT_FULL_IMAGE = "fullImage";
+
     @Override
     protected String getTitleText() {
         return getString(R.string.app_name);
@@ -77,46 +78,35 @@ public class MenuActivity extends BaseMenuActivity {
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode == MY_DOCUMENT_CAPTURE_REQUEST_CODE && resultCode == Activity.RESULT_OK) {
+            ResultTransfer resultTransfer = ResultTransfer.loadFromIntent(this, data);
+            if (resultTransfer != null) {
+                // custom activity returns only results, images are already copied to the handoff
+                // and are handed over without being materialized here
+                String resultText = "Result state: " + resultTransfer.getText(RESULT_STATE);
+                startActivity(ResultsActivity.buildIntent(this, resultText,
+                        resultTransfer.getImageHandle(RESULT_DOCUMENT_IMAGE), resultTransfer.getImageHandle(RESULT_FULL_IMAGE)));
+                return;
+            }
+
             DocumentCaptureRecognizerTransferable documentCaptureRecognizerTransferable =
                     DocumentCaptureRecognizerTransferable.createFromIntent(data);
 
             DocumentCaptureRecognizer.Result recognizerResult =
                     documentCaptureRecognizerTransferable.getDocumentCaptureRecognizer().getResult();
-            String documentImagePath = storeImageToFile(
-                    recognizerResult.getFullDocumentImage(),
-                    "documentImage.jpg"
-            );
-
-            String fullImagePath = storeImageToFile(documentCaptureRecognizerTransferable.getCapturedFullImage().getImage(),
-                    "fullImage.jpg");
+            // raw pixels are handed over without encoding them
+            ImageHandoff imageHandoff = ImageHandoff.getInstance(this);
+            String documentImageHandle = imageHandoff.put(recognizerResult.getFullDocumentImage());
+            String fullImageHandle = imageHandoff.put(documentCaptureRecognizerTransferable.getCapturedFullImage().getImage());
 
             String resultText = "Result state: " + recognizerResult.getResultState().name();
-
-            startActivity(ResultsActivity.buildIntent(this, resultText, documentImagePath, fullImagePath));
-        }
-    }
-
-    /**
-     * Stores image to file.
-     * @param image image to store.
-     * @param filename file name.
-     * @return full image path
-     */
-    private String storeImageToFile(Image image, String filename) {
-        String filePath;
-
-        try {
-            Bitmap bitmap = image.convertToBitmap();
-            File imageFile = new File(getFilesDir(), filename);
-            OutputStream os = new BufferedOutputStream(new FileOutputStream(imageFile));
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 100, os);
-            filePath = imageFile.getAbsolutePath();
-            os.close();
-        } catch (Exception e) {
-            filePath = null;
+            startActivity(ResultsActivity.buildIntent(this, resultText, documentImageHandle, fullImageHandle));
+        } else if (requestCode == MY_DOCUMENT_CAPTURE_REQUEST_CODE) {
+            // results screen is not started, it would otherwise release the handed over images
+            ResultTransfer resultTransfer = ResultTransfer.loadFromIntent(this, data);
+            if (resultTransfer != null) {
+                resultTransfer.release();
+            }
         }
-
-        return filePath;
     }
 
 }
\ No newline at end of file
@@ -4,30 +4,30 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
+import android.util.DisplayMetrics;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import java.io.File;
+import com.microblink.blinkinput.storage.ImageHandoff;
 
 import androidx.annotation.Nullable;
 
 public class ResultsActivity extends Activity {
 
     private static final String KEY_RESULT_TEXT = "resultText";
-    private static final String KEY_DOCUMENT_IMAGE_PATH = "documentImagePath";
-    private static final String KEY_FULL_IMAGE_PATH = "fullImagePath";
+    private static final String KEY_DOCUMENT_IMAGE_HANDLE = "documentImageHandle";
+    private static final String KEY_FULL_IMAGE_HANDLE = "fullImageHandle";
 
     public static Intent buildIntent(Context context,
                                      String resultText,
-                                     String documentImagePath,
-                                     String fullImagePath) {
+                                     String documentImageHandle,
+                                     String fullImageHandle) {
         Intent intent = new Intent(context, ResultsActivity.class);
         intent.putExtra(KEY_RESULT_TEXT, resultText);
-        intent.putExtra(KEY_DOCUMENT_IMAGE_PATH, documentImagePath);
-        intent.putExtra(KEY_FULL_IMAGE_PATH, fullImagePath);
+        intent.putExtra(KEY_DOCUMENT_IMAGE_HANDLE, documentImageHandle);
+        intent.putExtra(KEY_FULL_IMAGE_HANDLE, fullImageHandle);
         return intent;
     }
 
@@ -38,41 +38,43 @@ public class ResultsActivity extends Activity {
         TextView resultsTv = findViewById(R.id.results_tv);
         resultsTv.setText(getResultsFromExtras());
 
-        ImageView fullDocumentIv = findViewById(R.id.document_img);
-        Bitmap documentBmp = getResultBitmapFromExtras(KEY_DOCUMENT_IMAGE_PATH);
-        if (documentBmp != null) {
-            fullDocumentIv.setVisibility(View.VISIBLE);
-            fullDocumentIv.setImageBitmap(documentBmp);
-        } else {
-            fullDocumentIv.setVisibility(View.GONE);
-        }
-
-        ImageView fullFrameIv = findViewById(R.id.full_frame);
-        Bitmap fullFrameBmp = getResultBitmapFromExtras(KEY_FULL_IMAGE_PATH);
-        if (fullFrameBmp != null) {
-            fullFrameIv.setVisibility(View.VISIBLE);
-            fullFrameIv.setImageBitmap(fullFrameBmp);
-        } else {
-            fullFrameIv.setVisibility(View.GONE);
-        }
+        // images are converted in background and shown once they are ready
+        showResultImage(KEY_DOCUMENT_IMAGE_HANDLE, (ImageView) findViewById(R.id.document_img));
+        showResultImage(KEY_FULL_IMAGE_HANDLE, (ImageView) findViewById(R.id.full_frame));
     }
 
     private String getResultsFromExtras() {
         return getIntent().getStringExtra(KEY_RESULT_TEXT);
     }
 
-    private Bitmap getResultBitmapFromExtras(String pathKey) {
-        String imagePath = getIntent().getStringExtra(pathKey);
-        if(imagePath == null) {
-            return null;
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // images are kept while activity is only recreated, e.g. on rotation
+        if (isFinishing()) {
+            releaseResultImage(KEY_DOCUMENT_IMAGE_HANDLE);
+            releaseResultImage(KEY_FULL_IMAGE_HANDLE);
         }
+    }
+
+    private void showResultImage(String handleKey, final ImageView imageView) {
+        imageView.setVisibility(View.GONE);
+        // images are never shown larger than the screen, RGB_565 is enough as they are opaque
+        DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+        ImageHandoff.getInstance(this).loadBitmap(getIntent().getStringExtra(handleKey),
+                displayMetrics.widthPixels, displayMetrics.heightPixels, Bitmap.Config.RGB_565, new ImageHandoff.Callback() {
+                    @Override
+                    public void onBitmapLoaded(@Nullable Bitmap bitmap) {
+                        if (bitmap != null && !isFinishing() && !isDestroyed()) {
+                            imageView.setVisibility(View.VISIBLE);
+                            imageView.setImageBitmap(bitmap);
+                        }
+                    }
+                });
+    }
 
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-        Bitmap resultBitmap = BitmapFactory.decodeFile(imagePath, options);
-        //noinspection ResultOfMethodCallIgnored
-        new File(imagePath).delete();
-        return resultBitmap;
+    private void releaseResultImage(String handleKey) {
+        ImageHandoff.getInstance(this).release(getIntent().getStringExtra(handleKey));
     }
 
 }
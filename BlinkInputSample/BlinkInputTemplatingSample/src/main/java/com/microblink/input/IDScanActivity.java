@@ -20,6 +20,7 @@ import com.microblink.blinkinput.entities.recognizers.RecognizerBundle;
 import com.microblink.blinkinput.hardware.SuccessCallback;
 import com.microblink.blinkinput.hardware.orientation.Orientation;
 import com.microblink.blinkinput.metadata.MetadataCallbacks;
+import com.microblink.blinkinput.metrics.RecognitionMetrics;
 import com.microblink.blinkinput.metadata.detection.FailedDetectionCallback;
 import com.microblink.blinkinput.metadata.detection.points.DisplayablePointsDetection;
 import com.microblink.blinkinput.metadata.detection.points.PointsDetectionCallback;
@@ -27,6 +28,7 @@ import com.microblink.blinkinput.metadata.detection.points.PointsType;
 import com.microblink.blinkinput.metadata.detection.quad.DisplayableQuadDetection;
 import com.microblink.blinkinput.metadata.detection.quad.QuadDetectionCallback;
 import com.microblink.blinkinput.recognition.RecognitionSuccessType;
+import com.microblink.blinkinput.storage.BundleStateSaver;
 import com.microblink.blinkinput.util.CameraPermissionManager;
 import com.microblink.blinkinput.util.Log;
 import com.microblink.blinkinput.view.CameraEventsListener;
@@ -48,12 +50,16 @@ public class IDScanActivity extends Activity {
 
     private RecognizerRunnerView mRecognizerRunnerView;
     private RecognizerBundle mRecognizerBundle = new RecognizerBundle();
+    /** Saves mRecognizerBundle only when its results have changed */
+    private BundleStateSaver mBundleStateSaver;
     private QuadViewManager mQuadViewManager;
     private IDisplayablePointsView mOcrResultView;
     private CameraPermissionManager mCameraPermissionManager;
     private ImageButton mBackButton;
     private ImageButton mTorchButton;
     private boolean mTorchEnabled = false;
+    /** Outcomes of recognitions performed by the RecognizerRunnerView */
+    private final RecognitionMetrics mMetrics = new RecognitionMetrics();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -81,11 +87,12 @@ public class IDScanActivity extends Activity {
         // since mRecognizerBundle does not contain any recognizers, loadFromIntent will create
         // new recognizers from intent data and automatically bundle them inside mRecognizerBundle
         mRecognizerBundle.loadFromIntent(intent);
+        mBundleStateSaver = new BundleStateSaver(mRecognizerBundle);
 
         mRecognizerRunnerView = findViewById(R.id.recognizerRunnerView);
 
         mRecognizerRunnerView.setCameraEventsListener(mCameraEventsListener);
-        mRecognizerRunnerView.setScanResultListener(mScanResultListener);
+        mRecognizerRunnerView.setScanResultListener(mMetrics.wrap(mScanResultListener));
         mRecognizerRunnerView.setOnSizeChangedListener(mOnSizeChangedListener);
         mRecognizerRunnerView.setOrientationAllowedListener(new OrientationAllowedListener() {
             @Override
@@ -168,13 +175,6 @@ public class IDScanActivity extends Activity {
     protected void onResume() {
         super.onResume();
         mRecognizerRunnerView.resume();
-        /*
-         * Clear temporary file created in onSaveInstanceState in case no activity restart happened
-         * after call to onSaveInstanceState. If restart happened and temporary file was consumed
-         * by loadFromBundle method in onCreate, then this method will do nothing.
-         */
-        mRecognizerBundle.clearSavedState();
-
     }
 
     @Override
@@ -193,21 +193,28 @@ public class IDScanActivity extends Activity {
          * you should save RecognizerBundle's state in your onSaveInstanceState method. This will
          * ensure that bundle is written back to temporary file that will be available for loadFromBundle
          * method if activity gets restarted. However, if no restart occur, you must ensure this
-         * temporary file gets deleted. Therefore, you must call clearSavedState in your onResume callback.
+         * temporary file gets deleted. BundleStateSaver keeps the file while bundle content does not
+         * change, so it is not rewritten on every save, and deletes it when activity finishes.
          */
-        mRecognizerBundle.saveState();
+        if (mBundleStateSaver != null) {
+            mBundleStateSaver.saveState();
+        }
     }
 
     @Override
     protected void onStop() {
         super.onStop();
         mRecognizerRunnerView.stop();
+        Log.i(this, "Recognition metrics: {}", mMetrics);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
         mRecognizerRunnerView.destroy();
+        if (isFinishing() && mBundleStateSaver != null) {
+            mBundleStateSaver.clearSavedState();
+        }
     }
 
     @Override
@@ -228,6 +235,7 @@ public class IDScanActivity extends Activity {
         @Override
         @WorkerThread
         public void onScanningDone(@NonNull RecognitionSuccessType recognitionSuccessType) {
+            mBundleStateSaver.onContentChanged();
             if (recognitionSuccessType == RecognitionSuccessType.SUCCESSFUL) {
                 // pause scanning to prevent new results while activity is being shut down
                 mRecognizerRunnerView.pauseScanning();
@@ -1,45 +1,78 @@
 package com.microblink.input;
 
+import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.widget.Toast;
 
 import com.microblink.R;
 import com.microblink.blinkinput.BaseMenuActivity;
 import com.microblink.blinkinput.MenuListItem;
+import com.microblink.blinkinput.concurrent.BackgroundInitializer;
+import com.microblink.blinkinput.entities.parsers.Parser;
+import com.microblink.blinkinput.entities.parsers.date.DateParser;
+import com.microblink.blinkinput.entities.processors.imageReturn.ImageReturnProcessor;
 import com.microblink.blinkinput.entities.recognizers.Recognizer;
 import com.microblink.blinkinput.entities.recognizers.RecognizerBundle;
 import com.microblink.blinkinput.entities.recognizers.detector.DetectorRecognizer;
 import com.microblink.blinkinput.entities.recognizers.successframe.SuccessFrameGrabberRecognizer;
+import com.microblink.blinkinput.geometry.Quadrilateral;
 import com.microblink.blinkinput.image.Image;
 import com.microblink.blinkinput.results.date.Date;
 import com.microblink.blinkinput.results.date.SimpleDate;
+import com.microblink.blinkinput.storage.ImageHandoff;
 import com.microblink.blinkinput.util.RecognizerCompatibility;
 import com.microblink.blinkinput.util.RecognizerCompatibilityStatus;
+import com.microblink.util.templating.CompiledTemplate;
+import com.microblink.util.templating.CompiledTemplateCache;
 import com.microblink.util.templating.CroatianIDFrontSideTemplatingUtil;
+import com.microblink.util.templating.DeferredDewarp;
+import com.microblink.util.templating.TemplatingClassScheduler;
 
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.StringRes;
 
 public class MenuActivity extends BaseMenuActivity {
 
     private static final int REQ_CODE_CROID_FRONT = 123;
+    private static final int REQ_CODE_CROID_FRONT_TEMPLATE = 124;
+
+    private static final String CROID_FRONT_TEMPLATE_ASSET = "templates/croatian_id_front.json";
+    /** Names of the imageReturn processors in the template. */
+    private static final String TEMPLATE_FULL_DOCUMENT_IMAGE = "fullDocumentImage";
+    private static final String TEMPLATE_FACE_IMAGE = "faceImage";
 
     /**
      * Prepares all parsers and templating recognizer for scanning front side of
      * the Croatian ID front side and holds parsers references which are used later for
-     * obtaining scan results.
+     * obtaining scan results. Built once per process on a background thread, as building
+     * the template creates dozens of native parsers and processors.
+     */
+    private static final BackgroundInitializer<CroatianIDFrontSideTemplatingUtil> sCroatianIDFrontSideTemplatingUtil =
+            new BackgroundInitializer<>(new Callable<CroatianIDFrontSideTemplatingUtil>() {
+                @Override
+                public CroatianIDFrontSideTemplatingUtil call() {
+                    // face and full document images are dewarped from the success frame only when results are shown
+                    return new CroatianIDFrontSideTemplatingUtil(true);
+                }
+            });
+
+    /**
+     * Recognizer for the same document, compiled from declarative template in assets. Unlike the
+     * recognizer above, it returns face and full document images from its imageReturn processors,
+     * dewarped while scanning. Compiled template is cached by its content, so it is compiled only
+     * once per process.
      */
-    private CroatianIDFrontSideTemplatingUtil mCroatianIDFrontSideTemplatingUtil;
+    private BackgroundInitializer<CompiledTemplate> mCroatianIDFrontTemplate;
+
+    /** Orders old and new ID classes by how often they were scanned before */
+    private TemplatingClassScheduler mTemplatingClassScheduler;
 
     private DetectorRecognizer mCroatianIdFrontTemplatingRecognizer;
     private SuccessFrameGrabberRecognizer mSuccessFrameGrabberRecognizer;
@@ -50,7 +83,16 @@ public class MenuActivity extends BaseMenuActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mCroatianIDFrontSideTemplatingUtil = new CroatianIDFrontSideTemplatingUtil();
+        sCroatianIDFrontSideTemplatingUtil.start();
+        final Context applicationContext = getApplicationContext();
+        mCroatianIDFrontTemplate = new BackgroundInitializer<>(new Callable<CompiledTemplate>() {
+            @Override
+            public CompiledTemplate call() throws Exception {
+                return CompiledTemplateCache.getInstance().getFromAssets(applicationContext, CROID_FRONT_TEMPLATE_ASSET);
+            }
+        });
+        mCroatianIDFrontTemplate.start();
+        mTemplatingClassScheduler = new TemplatingClassScheduler(getSharedPreferences("croatianIdFrontClasses", MODE_PRIVATE));
 
         // check if BlinkInput is supported on the device
         RecognizerCompatibilityStatus supportStatus = RecognizerCompatibility.getRecognizerCompatibilityStatus(this);
@@ -71,6 +113,9 @@ public class MenuActivity extends BaseMenuActivity {
         // templating API sample (Croatian ID card - front side)
         items.add(buildCroatianIdFrontElement());
 
+        // same document, defined with declarative template
+        items.add(buildCroatianIdFrontTemplateElement());
+
         return items;
     }
 
@@ -78,7 +123,9 @@ public class MenuActivity extends BaseMenuActivity {
         return new MenuListItem(getString(R.string.croatian_id_front), new Runnable() {
             @Override
             public void run() {
-                mCroatianIdFrontTemplatingRecognizer = mCroatianIDFrontSideTemplatingUtil.getDetectorRecognizer();
+                // evaluate the more likely version of ID first, recognition stops at the first matching class
+                sCroatianIDFrontSideTemplatingUtil.get().applyClassificationOrder(mTemplatingClassScheduler);
+                mCroatianIdFrontTemplatingRecognizer = sCroatianIDFrontSideTemplatingUtil.get().getDetectorRecognizer();
 
                 //wrapping into SuccessFrameGrabberRecognizer because we want to show successful scan image
                 mSuccessFrameGrabberRecognizer = new SuccessFrameGrabberRecognizer(mCroatianIdFrontTemplatingRecognizer);
@@ -90,6 +137,20 @@ public class MenuActivity extends BaseMenuActivity {
         });
     }
 
+    private MenuListItem buildCroatianIdFrontTemplateElement() {
+        return new MenuListItem(getString(R.string.croatian_id_front_template), new Runnable() {
+            @Override
+            public void run() {
+                mCroatianIdFrontTemplatingRecognizer = mCroatianIDFrontTemplate.get().getDetectorRecognizer();
+                mSuccessFrameGrabberRecognizer = new SuccessFrameGrabberRecognizer(mCroatianIdFrontTemplatingRecognizer);
+
+                mRecognizerBundle = new RecognizerBundle(mSuccessFrameGrabberRecognizer);
+                mRecognizerBundle.setNumMsBeforeTimeout(10_000);
+                startScanActivity(mRecognizerBundle, REQ_CODE_CROID_FRONT_TEMPLATE);
+            }
+        });
+    }
+
     private void startScanActivity(RecognizerBundle recognizerBundle, int requestCode) {
         Intent intent = new Intent(MenuActivity.this, IDScanActivity.class);
         recognizerBundle.saveToIntent(intent);
@@ -104,38 +165,71 @@ public class MenuActivity extends BaseMenuActivity {
             // through recognizer instances
             mRecognizerBundle.loadFromIntent(data);
 
-            String successFramePath = storeImageToFile(mSuccessFrameGrabberRecognizer.getResult().getSuccessFrame(),
-                    "successFrame.jpg");
+            if (mCroatianIdFrontTemplatingRecognizer.getResult().getResultState() != Recognizer.Result.State.Valid) {
+                return;
+            }
 
-            String fullDocumentPath = storeImageToFile(mCroatianIDFrontSideTemplatingUtil.getFullDocumentImage().getResult().getRawImage(),
-                    "fullDocument.jpg");
+            // raw pixels are handed over without encoding them
+            Image successFrame = mSuccessFrameGrabberRecognizer.getResult().getSuccessFrame();
+            String successFrameHandle = ImageHandoff.getInstance(this).put(successFrame);
+
+            boolean newID = sCroatianIDFrontSideTemplatingUtil.get().getOldDocumentNumberParser().getResult().toString().isEmpty();
+            mTemplatingClassScheduler.recordHit(newID ? CroatianIDFrontSideTemplatingUtil.CLASS_NEW_ID : CroatianIDFrontSideTemplatingUtil.CLASS_OLD_ID);
+            DeferredDewarp fullDocumentDewarp = null;
+            DeferredDewarp faceDewarp = null;
+            if (successFrame != null) {
+                // detection location is in the raw frame, while handed over frame is rotated upright
+                Quadrilateral documentLocation = mCroatianIdFrontTemplatingRecognizer.getDetector().getResult().getDetectionLocation();
+                fullDocumentDewarp = sCroatianIDFrontSideTemplatingUtil.get().getFullDocumentDewarp().forDocumentLocation(
+                        documentLocation, successFrame.getImageOrientation(), successFrame.getRawWidth(), successFrame.getRawHeight());
+                faceDewarp = sCroatianIDFrontSideTemplatingUtil.get().getFaceDewarp(newID).forDocumentLocation(
+                        documentLocation, successFrame.getImageOrientation(), successFrame.getRawWidth(), successFrame.getRawHeight());
+            }
 
-            String facePath = storeImageToFile(mCroatianIDFrontSideTemplatingUtil.getFaceImage().getResult().getRawImage(),
-                    "face.jpg");
+            startActivity(ResultsActivity.buildIntent(this, extractCroatianIdFrontData(),
+                    successFrameHandle, fullDocumentDewarp, faceDewarp));
+        } else if (resultCode == IDScanActivity.RESULT_OK && requestCode == REQ_CODE_CROID_FRONT_TEMPLATE) {
+            mRecognizerBundle.loadFromIntent(data);
 
-            String resultText = extractCroatianIdFrontData();
-            if (mCroatianIdFrontTemplatingRecognizer.getResult().getResultState() == Recognizer.Result.State.Valid) {
-                startActivity(ResultsActivity.buildIntent(this, resultText, successFramePath, fullDocumentPath, facePath));
+            if (mCroatianIdFrontTemplatingRecognizer.getResult().getResultState() != Recognizer.Result.State.Valid) {
+                return;
             }
+
+            CompiledTemplate template = mCroatianIDFrontTemplate.get();
+            ImageHandoff imageHandoff = ImageHandoff.getInstance(this);
+            String successFrameHandle = imageHandoff.put(mSuccessFrameGrabberRecognizer.getResult().getSuccessFrame());
+            String fullDocumentImageHandle = putTemplateImage(imageHandoff, template, TEMPLATE_FULL_DOCUMENT_IMAGE);
+            String faceImageHandle = putTemplateImage(imageHandoff, template, TEMPLATE_FACE_IMAGE);
+            startActivity(ResultsActivity.buildIntent(this, extractTemplateData(template),
+                    successFrameHandle, fullDocumentImageHandle, faceImageHandle));
         }
     }
 
-    //returns absolute file path
-    private String storeImageToFile(Image image, String filename) {
-        String filePath;
-
-        try {
-            Bitmap bitmap = image.convertToBitmap();
-            File imageFile = new File(getFilesDir(), filename);
-            OutputStream os = new BufferedOutputStream(new FileOutputStream(imageFile));
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 100, os);
-            filePath = imageFile.getAbsolutePath();
-            os.close();
-        } catch (Exception e) {
-            filePath = null;
-        }
+    @Nullable
+    private String putTemplateImage(@NonNull ImageHandoff imageHandoff, @NonNull CompiledTemplate template,
+                                    @NonNull String processorName) {
+        ImageReturnProcessor imageProcessor = template.getImageProcessor(processorName);
+        return imageProcessor != null ? imageHandoff.put(imageProcessor.getResult().getRawImage()) : null;
+    }
 
-        return filePath;
+    private String extractTemplateData(@NonNull CompiledTemplate template) {
+        StringBuilder sb = new StringBuilder();
+        for (String parserName : template.getParserNames()) {
+            Parser<?> parser = template.getParser(parserName);
+            String value;
+            if (parser instanceof DateParser) {
+                // dates are formatted the same way as in the results of the recognizer above
+                SimpleDate date = ((DateParser) parser).getResult().getDate().getDate();
+                value = date != null ? formatDate(date) : "";
+            } else {
+                value = parser.getResult().toString();
+            }
+            // parsers of the class which was not recognized have no results
+            if (!value.isEmpty()) {
+                sb.append(parserName).append(": ").append(value).append("\n");
+            }
+        }
+        return sb.toString();
     }
 
     private String extractCroatianIdFrontData() {
@@ -143,32 +237,32 @@ public class MenuActivity extends BaseMenuActivity {
         String newline = "\n";
 
         addEntry(sb, R.string.result_key_first_name,
-                mCroatianIDFrontSideTemplatingUtil.getFirstNameParser().getResult().toString());
+                sCroatianIDFrontSideTemplatingUtil.get().getFirstNameParser().getResult().toString());
         sb.append(newline);
 
         addEntry(sb, R.string.result_key_last_name,
-                mCroatianIDFrontSideTemplatingUtil.getLastNameParser().getResult().toString());
+                sCroatianIDFrontSideTemplatingUtil.get().getLastNameParser().getResult().toString());
         sb.append(newline);
 
         // either new or old document number parser contains valid result (depends on the scanned document type)
         @StringRes int documentNumberKeyResourceId = R.string.result_key_old_document_number;
-        String documentNumber = mCroatianIDFrontSideTemplatingUtil.getOldDocumentNumberParser().getResult().toString();
+        String documentNumber = sCroatianIDFrontSideTemplatingUtil.get().getOldDocumentNumberParser().getResult().toString();
         if (documentNumber.isEmpty()) {
-            documentNumber = mCroatianIDFrontSideTemplatingUtil.getNewDocumentNumberParser().getResult().toString();
+            documentNumber = sCroatianIDFrontSideTemplatingUtil.get().getNewDocumentNumberParser().getResult().toString();
             documentNumberKeyResourceId = R.string.result_key_new_document_number;
         }
         addEntry(sb, documentNumberKeyResourceId, documentNumber);
         sb.append(newline);
 
         addEntry(sb, R.string.result_key_sex,
-                mCroatianIDFrontSideTemplatingUtil.getSexParser().getResult().toString());
+                sCroatianIDFrontSideTemplatingUtil.get().getSexParser().getResult().toString());
         sb.append(newline);
 
         addEntry(sb, R.string.result_key_citizenship,
-                mCroatianIDFrontSideTemplatingUtil.getCitizenshipParser().getResult().toString());
+                sCroatianIDFrontSideTemplatingUtil.get().getCitizenshipParser().getResult().toString());
         sb.append(newline);
 
-        SimpleDate dateOfBirth = mCroatianIDFrontSideTemplatingUtil.getDateOfBirthParser().getResult().getDate().getDate();
+        SimpleDate dateOfBirth = sCroatianIDFrontSideTemplatingUtil.get().getDateOfBirthParser().getResult().getDate().getDate();
         if (dateOfBirth != null) {
             addEntry(sb, R.string.result_key_date_of_birth, formatDate(dateOfBirth));
         }
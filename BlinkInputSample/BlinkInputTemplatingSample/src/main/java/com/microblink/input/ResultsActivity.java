@@ -4,34 +4,63 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
 import android.os.Bundle;
+import android.util.DisplayMetrics;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.microblink.R;
+import com.microblink.blinkinput.concurrent.BigCoreExecutor;
+import com.microblink.blinkinput.storage.ImageHandoff;
+import com.microblink.util.templating.DeferredDewarp;
 
-import java.io.File;
-
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 public class ResultsActivity extends Activity {
 
     private static final String KEY_RESULT_TEXT = "resultText";
-    private static final String KEY_SUCCESS_FRAME_IMAGE_PATH = "successFramePath";
-    private static final String KEY_FULL_DOCUMENT_IMAGE_PATH = "fullDocumentPath";
-    private static final String KEY_FACE_IMAGE_PATH = "facePath";
+    private static final String KEY_SUCCESS_FRAME_IMAGE_HANDLE = "successFrameHandle";
+    private static final String KEY_FULL_DOCUMENT_DEWARP = "fullDocumentDewarp";
+    private static final String KEY_FACE_DEWARP = "faceDewarp";
+    private static final String KEY_FULL_DOCUMENT_IMAGE_HANDLE = "fullDocumentImageHandle";
+    private static final String KEY_FACE_IMAGE_HANDLE = "faceImageHandle";
+
+    /**
+     * @param fullDocumentDewarp Recipe for dewarping full document image from the success frame.
+     * @param faceDewarp Recipe for dewarping face image from the success frame.
+     */
+    public static Intent buildIntent(Context context,
+                                     String resultText,
+                                     String successFrameHandle,
+                                     DeferredDewarp fullDocumentDewarp,
+                                     DeferredDewarp faceDewarp) {
+        Intent intent = new Intent(context, ResultsActivity.class);
+        intent.putExtra(KEY_RESULT_TEXT, resultText);
+        intent.putExtra(KEY_SUCCESS_FRAME_IMAGE_HANDLE, successFrameHandle);
+        intent.putExtra(KEY_FULL_DOCUMENT_DEWARP, fullDocumentDewarp);
+        intent.putExtra(KEY_FACE_DEWARP, faceDewarp);
+        return intent;
+    }
 
+    /**
+     * @param fullDocumentImageHandle Handle of the full document image dewarped while scanning.
+     * @param faceImageHandle Handle of the face image dewarped while scanning.
+     */
     public static Intent buildIntent(Context context,
                                      String resultText,
-                                     String successFramePath,
-                                     String fullDocumentImagePath,
-                                     String faceImagePath) {
+                                     String successFrameHandle,
+                                     String fullDocumentImageHandle,
+                                     String faceImageHandle) {
         Intent intent = new Intent(context, ResultsActivity.class);
         intent.putExtra(KEY_RESULT_TEXT, resultText);
-        intent.putExtra(KEY_SUCCESS_FRAME_IMAGE_PATH, successFramePath);
-        intent.putExtra(KEY_FULL_DOCUMENT_IMAGE_PATH, fullDocumentImagePath);
-        intent.putExtra(KEY_FACE_IMAGE_PATH, faceImagePath);
+        intent.putExtra(KEY_SUCCESS_FRAME_IMAGE_HANDLE, successFrameHandle);
+        intent.putExtra(KEY_FULL_DOCUMENT_IMAGE_HANDLE, fullDocumentImageHandle);
+        intent.putExtra(KEY_FACE_IMAGE_HANDLE, faceImageHandle);
         return intent;
     }
 
@@ -42,32 +71,116 @@ public class ResultsActivity extends Activity {
         TextView resultsTv = findViewById(R.id.results_tv);
         resultsTv.setText(getResultsFromExtras());
 
+        final Context applicationContext = getApplicationContext();
+        final String successFrameHandle = getIntent().getStringExtra(KEY_SUCCESS_FRAME_IMAGE_HANDLE);
+        final DeferredDewarp fullDocumentDewarp = getIntent().getParcelableExtra(KEY_FULL_DOCUMENT_DEWARP);
+        final DeferredDewarp faceDewarp = getIntent().getParcelableExtra(KEY_FACE_DEWARP);
+        final String fullDocumentImageHandle = getIntent().getStringExtra(KEY_FULL_DOCUMENT_IMAGE_HANDLE);
+        final String faceImageHandle = getIntent().getStringExtra(KEY_FACE_IMAGE_HANDLE);
+        final DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+        // success frame is converted only once and all images are created in background, they are
+        // shown once they are ready
+        BigCoreExecutor.getInstance().getExecutorService().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap[] resultImages = createResultImages(applicationContext, successFrameHandle,
+                        displayMetrics.widthPixels, displayMetrics.heightPixels, fullDocumentDewarp, faceDewarp,
+                        fullDocumentImageHandle, faceImageHandle);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isFinishing() && !isDestroyed()) {
+                            showResultImages(resultImages);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return Success frame scaled to display size, full document image and face image, with null
+     * elements for images which are not available.
+     */
+    @WorkerThread
+    @NonNull
+    private static Bitmap[] createResultImages(@NonNull Context context, @Nullable String successFrameHandle,
+                                               int displayWidth, int displayHeight,
+                                               @Nullable DeferredDewarp fullDocumentDewarp,
+                                               @Nullable DeferredDewarp faceDewarp,
+                                               @Nullable String fullDocumentImageHandle,
+                                               @Nullable String faceImageHandle) {
+        Bitmap[] resultImages = new Bitmap[3];
+        ImageHandoff imageHandoff = ImageHandoff.getInstance(context);
+        if (fullDocumentDewarp == null && faceDewarp == null) {
+            // nothing to dewarp, frame is needed only for display
+            resultImages[0] = imageHandoff.getBitmap(successFrameHandle, displayWidth, displayHeight, Bitmap.Config.RGB_565);
+        } else {
+            // document images are dewarped only now, from the success frame in full resolution
+            Bitmap fullSuccessFrame = imageHandoff.getBitmap(successFrameHandle, 0, 0, Bitmap.Config.ARGB_8888);
+            if (fullSuccessFrame != null) {
+                // both images are cropped from a single dewarp of the document
+                Bitmap[] documentImages = DeferredDewarp.dewarpAll(fullSuccessFrame, Bitmap.Config.RGB_565,
+                        fullDocumentDewarp, faceDewarp);
+                resultImages[0] = scaleToFit(fullSuccessFrame, displayWidth, displayHeight);
+                resultImages[1] = documentImages[0];
+                resultImages[2] = documentImages[1];
+                fullSuccessFrame.recycle();
+            }
+        }
+        if (fullDocumentImageHandle != null) {
+            resultImages[1] = imageHandoff.getBitmap(fullDocumentImageHandle, displayWidth, displayHeight, Bitmap.Config.RGB_565);
+        }
+        if (faceImageHandle != null) {
+            resultImages[2] = imageHandoff.getBitmap(faceImageHandle, displayWidth, displayHeight, Bitmap.Config.RGB_565);
+        }
+        return resultImages;
+    }
+
+    /**
+     * @return Copy of the frame which is not larger than the display, in RGB_565 as frames are
+     * opaque.
+     */
+    @NonNull
+    private static Bitmap scaleToFit(@NonNull Bitmap frame, int maxWidth, int maxHeight) {
+        float scale = Math.min(1.f, Math.min((float) maxWidth / frame.getWidth(), (float) maxHeight / frame.getHeight()));
+        int width = Math.max(1, Math.round(scale * frame.getWidth()));
+        int height = Math.max(1, Math.round(scale * frame.getHeight()));
+        Bitmap scaled = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        Matrix transform = new Matrix();
+        transform.setScale((float) width / frame.getWidth(), (float) height / frame.getHeight());
+        new Canvas(scaled).drawBitmap(frame, transform, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return scaled;
+    }
+
+    private void showResultImages(@NonNull Bitmap[] resultImages) {
         ImageView successFrameImg = findViewById(R.id.success_frame_img);
-        successFrameImg.setImageBitmap(getResultBitmapFromExtras(KEY_SUCCESS_FRAME_IMAGE_PATH));
+        successFrameImg.setImageBitmap(resultImages[0]);
 
         ImageView fullDocumentImg = findViewById(R.id.full_document_img);
-        fullDocumentImg.setImageBitmap(getResultBitmapFromExtras(KEY_FULL_DOCUMENT_IMAGE_PATH));
+        fullDocumentImg.setImageBitmap(resultImages[1]);
 
         ImageView faceImg = findViewById(R.id.face_img);
-        faceImg.setImageBitmap(getResultBitmapFromExtras(KEY_FACE_IMAGE_PATH));
+        faceImg.setImageBitmap(resultImages[2]);
     }
 
     private String getResultsFromExtras() {
         return getIntent().getStringExtra(KEY_RESULT_TEXT);
     }
 
-    private Bitmap getResultBitmapFromExtras(String pathKey) {
-        String imagePath = getIntent().getStringExtra(pathKey);
-        if(imagePath == null) {
-            return null;
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // images are kept while activity is only recreated, e.g. on rotation
+        if (isFinishing()) {
+            releaseResultImage(KEY_SUCCESS_FRAME_IMAGE_HANDLE);
+            releaseResultImage(KEY_FULL_DOCUMENT_IMAGE_HANDLE);
+            releaseResultImage(KEY_FACE_IMAGE_HANDLE);
         }
+    }
 
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-        Bitmap resultBitmap = BitmapFactory.decodeFile(imagePath, options);
-        //noinspection ResultOfMethodCallIgnored
-        new File(imagePath).delete();
-        return resultBitmap;
+    private void releaseResultImage(String handleKey) {
+        ImageHandoff.getInstance(this).release(getIntent().getStringExtra(handleKey));
     }
 
 }
@@ -0,0 +1,63 @@
+package com.microblink.util.templating;
+
+import com.microblink.blinkinput.entities.parsers.Parser;
+import com.microblink.blinkinput.entities.processors.imageReturn.ImageReturnProcessor;
+import com.microblink.blinkinput.entities.recognizers.detector.DetectorRecognizer;
+import com.microblink.blinkinput.entities.recognizers.templating.TemplatingClass;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * {@link DetectorRecognizer} built by {@link TemplateCompiler}, with its parsers, image processors
+ * and classes accessible by names from the template.
+ */
+public final class CompiledTemplate {
+
+    private final DetectorRecognizer mDetectorRecognizer;
+    private final Map<String, Parser<?>> mParsers;
+    private final Map<String, ImageReturnProcessor> mImageProcessors;
+    private final Map<String, TemplatingClass> mClasses;
+
+    CompiledTemplate(@NonNull DetectorRecognizer detectorRecognizer, @NonNull Map<String, Parser<?>> parsers,
+                     @NonNull Map<String, ImageReturnProcessor> imageProcessors,
+                     @NonNull Map<String, TemplatingClass> classes) {
+        mDetectorRecognizer = detectorRecognizer;
+        mParsers = parsers;
+        mImageProcessors = imageProcessors;
+        mClasses = classes;
+    }
+
+    @NonNull
+    public DetectorRecognizer getDetectorRecognizer() {
+        return mDetectorRecognizer;
+    }
+
+    /**
+     * @return Names of the parsers in order in which they are defined in the template.
+     */
+    @NonNull
+    public Set<String> getParserNames() {
+        return Collections.unmodifiableSet(mParsers.keySet());
+    }
+
+    @Nullable
+    public Parser<?> getParser(@NonNull String name) {
+        return mParsers.get(name);
+    }
+
+    @Nullable
+    public ImageReturnProcessor getImageProcessor(@NonNull String name) {
+        return mImageProcessors.get(name);
+    }
+
+    @Nullable
+    public TemplatingClass getTemplatingClass(@NonNull String name) {
+        return mClasses.get(name);
+    }
+
+}
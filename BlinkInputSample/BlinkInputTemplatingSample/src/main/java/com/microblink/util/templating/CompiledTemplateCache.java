@@ -0,0 +1,88 @@
+package com.microblink.util.templating;
+
+import android.content.Context;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Keeps compiled templates for the lifetime of the process, keyed by SHA-256 hash of the template
+ * content, so a template is compiled only once and again only if its content changes.
+ * <p>
+ * Compiled template holds recognizer entities whose results are overwritten by every scan, so it
+ * must not be used by two scans at the same time.
+ */
+public final class CompiledTemplateCache {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static CompiledTemplateCache sInstance;
+
+    private final Map<String, CompiledTemplate> mTemplates = new HashMap<>();
+
+    /**
+     * @return Cache shared by the whole application.
+     */
+    @NonNull
+    public static synchronized CompiledTemplateCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new CompiledTemplateCache();
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return Compiled template, compiled now if template with the same content is not cached.
+     */
+    @NonNull
+    public synchronized CompiledTemplate get(@NonNull String template) throws InvalidTemplateException {
+        String key = sha256(template.getBytes(UTF_8));
+        CompiledTemplate compiled = mTemplates.get(key);
+        if (compiled == null) {
+            compiled = new TemplateCompiler().compile(template);
+            mTemplates.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * @param assetPath Path of the template within assets, e.g. {@code templates/croatian_id_front.json}.
+     */
+    @NonNull
+    public CompiledTemplate getFromAssets(@NonNull Context context, @NonNull String assetPath) throws IOException, InvalidTemplateException {
+        ByteArrayOutputStream template = new ByteArrayOutputStream();
+        try (InputStream in = context.getAssets().open(assetPath)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                template.write(buffer, 0, read);
+            }
+        }
+        return get(new String(template.toByteArray(), UTF_8));
+    }
+
+    @NonNull
+    private static String sha256(@NonNull byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Android platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+}
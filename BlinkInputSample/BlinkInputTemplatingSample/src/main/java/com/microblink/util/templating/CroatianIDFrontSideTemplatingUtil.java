@@ -27,14 +27,37 @@ import androidx.annotation.Nullable;
 /**
  * An example how Templating API can be used to add support for scanning custom document.
  * This example shows how to use Templating API to scan front side of Croatian National ID card.
+ * The same document is also defined declaratively, with locations in millimetres, in
+ * {@code assets/templates/croatian_id_front.json}, see {@link TemplateCompiler}.
  */
 public final class CroatianIDFrontSideTemplatingUtil {
 
+    /** Key of the old version class for {@link TemplatingClassScheduler}. */
+    public static final String CLASS_OLD_ID = "oldID";
+    /** Key of the new version class for {@link TemplatingClassScheduler}. */
+    public static final String CLASS_NEW_ID = "newID";
+
+    /** Croatian ID card has width of 85mm and height of 54mm. */
+    private static final float DOCUMENT_WIDTH_INCHES = 85.f / 25.4f;
+    private static final float DOCUMENT_HEIGHT_INCHES = 54.f / 25.4f;
+
     /**
      * Constructor will configure all components required to add support for scanning front side
      * of Croatian National ID card.
      */
     public CroatianIDFrontSideTemplatingUtil() {
+        this(false);
+    }
+
+    /**
+     * @param deferImageDewarping If true, face and full document images are not dewarped on every
+     *                            classified frame. Instead, they can be dewarped from the success
+     *                            frame after scanning with recipes from {@link #getFullDocumentDewarp()}
+     *                            and {@link #getFaceDewarp(boolean)}, and {@link #getFullDocumentImage()}
+     *                            and {@link #getFaceImage()} will not hold results.
+     */
+    public CroatianIDFrontSideTemplatingUtil(boolean deferImageDewarping) {
+        mDeferImageDewarping = deferImageDewarping;
 
         // first, configure parsers that will extract OCR results
         configureParsers();
@@ -99,6 +122,39 @@ public final class CroatianIDFrontSideTemplatingUtil {
         return mFaceImage;
     }
 
+    /**
+     * Sets the order in which old and new version classes are evaluated, see
+     * {@link TemplatingClassScheduler}. Must be called before recognizer is sent for scanning.
+     */
+    public void applyClassificationOrder(@NonNull TemplatingClassScheduler scheduler) {
+        // both classes are classified by OCR of equally sized document number regions, so only
+        // the probability of the class matters
+        Integer[] order = scheduler.order(new String[] {CLASS_OLD_ID, CLASS_NEW_ID});
+        TemplatingClass[] classes = {mOldID, mNewID};
+        TemplatingClass[] orderedClasses = new TemplatingClass[classes.length];
+        for (int i = 0; i < order.length; ++i) {
+            orderedClasses[i] = classes[order[i]];
+        }
+        mDetectorRecognizer.setTemplatingClasses(orderedClasses);
+    }
+
+    /**
+     * @return Recipe for dewarping full document image, which must be bound to detected document
+     * location with {@link DeferredDewarp#forDocumentLocation}.
+     */
+    public DeferredDewarp getFullDocumentDewarp() {
+        return mFullDocumentDewarp;
+    }
+
+    /**
+     * @param newID Whether new version of the ID card has been scanned.
+     * @return Recipe for dewarping face image, which must be bound to detected document location
+     * with {@link DeferredDewarp#forDocumentLocation}.
+     */
+    public DeferredDewarp getFaceDewarp(boolean newID) {
+        return newID ? mFaceNewIDDewarp : mFaceOldIDDewarp;
+    }
+
     /**
      * This function fill configure parsers for parsing data from OCR.
      */
@@ -374,19 +430,23 @@ public final class CroatianIDFrontSideTemplatingUtil {
         // In same way as above, we create ProcessorGroup for image of the face on document.
         //------------------------------------------------------------------------------------------
 
+        Rectangle faceOldIDLocation = new Rectangle( 0.650f, 0.277f, 0.270f, 0.630f );
         mFaceOldID = new ProcessorGroup(
-                new Rectangle( 0.650f, 0.277f, 0.270f, 0.630f ),
+                faceOldIDLocation,
                 // use DPI-based policy to ensure images of 200 DPI
                 new DPIBasedDewarpPolicy(200),
                 mFaceImage
         );
+        mFaceOldIDDewarp = new DeferredDewarp(faceOldIDLocation, 200, DOCUMENT_WIDTH_INCHES, DOCUMENT_HEIGHT_INCHES);
 
+        Rectangle faceNewIDLocation = new Rectangle( 0.659f, 0.407f, 0.294f, 0.574f);
         mFaceNewID = new ProcessorGroup(
-                new Rectangle( 0.659f, 0.407f, 0.294f, 0.574f),
+                faceNewIDLocation,
                 // use DPI-based policy to ensure images of 200 DPI
                 new DPIBasedDewarpPolicy(200),
                 mFaceImage
         );
+        mFaceNewIDDewarp = new DeferredDewarp(faceNewIDLocation, 200, DOCUMENT_WIDTH_INCHES, DOCUMENT_HEIGHT_INCHES);
 
         //------------------------------------------------------------------------------------------
         // Full document image
@@ -394,11 +454,13 @@ public final class CroatianIDFrontSideTemplatingUtil {
         // location of full document is same regardless of document version
         //------------------------------------------------------------------------------------------
 
+        Rectangle fullDocumentLocation = new Rectangle(0.f, 0.f, 1.f, 1.f);
         mFullDocument = new ProcessorGroup(
-                new Rectangle(0.f, 0.f, 1.f, 1.f),
+                fullDocumentLocation,
                 new DPIBasedDewarpPolicy(200),
                 mFullDocumentImage
         );
+        mFullDocumentDewarp = new DeferredDewarp(fullDocumentLocation, 200, DOCUMENT_WIDTH_INCHES, DOCUMENT_HEIGHT_INCHES);
     }
 
     /**
@@ -412,7 +474,11 @@ public final class CroatianIDFrontSideTemplatingUtil {
             mOldID.setTemplatingClassifier(new CroIDTemplatingClassifier(mOldID, mOldDocumentNumberParser));
 
             mOldID.setClassificationProcessorGroups(mDocumentNumberOldID);
-            mOldID.setNonClassificationProcessorGroups(mFirstNameOldID, mLastNameOldID, mSexCitizenshipDOBOldID, mFaceOldID, mFullDocument);
+            if (mDeferImageDewarping) {
+                mOldID.setNonClassificationProcessorGroups(mFirstNameOldID, mLastNameOldID, mSexCitizenshipDOBOldID);
+            } else {
+                mOldID.setNonClassificationProcessorGroups(mFirstNameOldID, mLastNameOldID, mSexCitizenshipDOBOldID, mFaceOldID, mFullDocument);
+            }
         }
         // configure new version class
         {
@@ -420,7 +486,11 @@ public final class CroatianIDFrontSideTemplatingUtil {
             mNewID.setTemplatingClassifier(new CroIDTemplatingClassifier(mNewID, mNewDocumentNumberParser));
 
             mNewID.setClassificationProcessorGroups(mDocumentNumberNewID);
-            mNewID.setNonClassificationProcessorGroups(mFirstNameNewID, mLastNameNewID, mSexCitizenshipDOBNewID, mFaceNewID, mFullDocument);
+            if (mDeferImageDewarping) {
+                mNewID.setNonClassificationProcessorGroups(mFirstNameNewID, mLastNameNewID, mSexCitizenshipDOBNewID);
+            } else {
+                mNewID.setNonClassificationProcessorGroups(mFirstNameNewID, mLastNameNewID, mSexCitizenshipDOBNewID, mFaceNewID, mFullDocument);
+            }
         }
     }
 
@@ -550,6 +620,8 @@ public final class CroatianIDFrontSideTemplatingUtil {
     }
 
 
+    private final boolean mDeferImageDewarping;
+
     //----------------------------------------------------------------------------------------------
     // Detector recognizer
     //----------------------------------------------------------------------------------------------
@@ -605,6 +677,14 @@ public final class CroatianIDFrontSideTemplatingUtil {
     private ImageReturnProcessor mFullDocumentImage;
     private ImageReturnProcessor mFaceImage;
 
+    //----------------------------------------------------------------------------------------------
+    // Deferred dewarps of image regions
+    //----------------------------------------------------------------------------------------------
+
+    private DeferredDewarp mFullDocumentDewarp;
+    private DeferredDewarp mFaceOldIDDewarp;
+    private DeferredDewarp mFaceNewIDDewarp;
+
     // two groups because we have two classification parsers
     private ParserGroupProcessor mOldDocumentNumberGroup;
     private ParserGroupProcessor mNewDocumentNumberGroup;
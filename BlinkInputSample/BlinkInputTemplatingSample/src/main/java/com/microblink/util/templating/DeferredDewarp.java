@@ -0,0 +1,283 @@
+package com.microblink.util.templating;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.microblink.blinkinput.geometry.Point;
+import com.microblink.blinkinput.geometry.Quadrilateral;
+import com.microblink.blinkinput.geometry.Rectangle;
+import com.microblink.blinkinput.hardware.orientation.Orientation;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Recipe for dewarping a region of the document from the camera frame after scanning has finished.
+ * <p>
+ * {@code ProcessorGroup} with an {@code ImageReturnProcessor} dewarps its region on every frame on
+ * which the document is classified, although only images from the final frame are ever shown.
+ * Instead, keep the frame on which recognition succeeded (e.g. with
+ * {@code SuccessFrameGrabberRecognizer}) and location of the document on it, and dewarp the region
+ * only when the image is needed.
+ * <p>
+ * Region and DPI have the same meaning as in {@code ProcessorGroup} and
+ * {@code DPIBasedDewarpPolicy}.
+ */
+public final class DeferredDewarp implements Parcelable {
+
+    private final float mX;
+    private final float mY;
+    private final float mWidth;
+    private final float mHeight;
+    private final int mDpi;
+    private final float mDocumentWidthInches;
+    private final float mDocumentHeightInches;
+    /** Corners of the document on the frame: upper left, upper right, lower right, lower left. */
+    private final float[] mDocumentLocation;
+
+    /**
+     * @param region Location of the region relative to the document.
+     * @param dpi DPI of the dewarped image.
+     * @param documentWidthInches Physical width of the document.
+     * @param documentHeightInches Physical height of the document.
+     */
+    public DeferredDewarp(@NonNull Rectangle region, int dpi, float documentWidthInches, float documentHeightInches) {
+        this(region.getX(), region.getY(), region.getWidth(), region.getHeight(), dpi,
+                documentWidthInches, documentHeightInches, null);
+    }
+
+    private DeferredDewarp(float x, float y, float width, float height, int dpi, float documentWidthInches,
+                           float documentHeightInches, @Nullable float[] documentLocation) {
+        mX = x;
+        mY = y;
+        mWidth = width;
+        mHeight = height;
+        mDpi = dpi;
+        mDocumentWidthInches = documentWidthInches;
+        mDocumentHeightInches = documentHeightInches;
+        mDocumentLocation = documentLocation;
+    }
+
+    /**
+     * @param documentLocation Location of the detected document in coordinate system of the raw
+     *                         frame on which it was detected, as returned by the detector.
+     * @param frameOrientation Orientation of the frame, see {@code Image.getImageOrientation()}.
+     * @param rawWidth         Width of the raw frame.
+     * @param rawHeight        Height of the raw frame.
+     * @return Copy of this recipe bound to the document location on the orientation corrected
+     * frame, e.g. the one returned by {@code ImageHandoff}.
+     */
+    @NonNull
+    public DeferredDewarp forDocumentLocation(@NonNull Quadrilateral documentLocation, @NonNull Orientation frameOrientation,
+                                              int rawWidth, int rawHeight) {
+        return forDocumentLocation(new Quadrilateral(
+                toOrientationCorrected(documentLocation.getUpperLeft(), frameOrientation, rawWidth, rawHeight),
+                toOrientationCorrected(documentLocation.getUpperRight(), frameOrientation, rawWidth, rawHeight),
+                toOrientationCorrected(documentLocation.getLowerLeft(), frameOrientation, rawWidth, rawHeight),
+                toOrientationCorrected(documentLocation.getLowerRight(), frameOrientation, rawWidth, rawHeight)
+        ));
+    }
+
+    /**
+     * @param documentLocation Location of the detected document in coordinate system of the frame
+     *                         which will be dewarped.
+     * @return Copy of this recipe bound to the given document location.
+     */
+    @NonNull
+    public DeferredDewarp forDocumentLocation(@NonNull Quadrilateral documentLocation) {
+        Quadrilateral sorted = documentLocation.getSortedQuad();
+        Point[] corners = {sorted.getUpperLeft(), sorted.getUpperRight(), sorted.getLowerRight(), sorted.getLowerLeft()};
+        float[] location = new float[8];
+        for (int i = 0; i < corners.length; ++i) {
+            location[2 * i] = corners[i].getX();
+            location[2 * i + 1] = corners[i].getY();
+        }
+        return new DeferredDewarp(mX, mY, mWidth, mHeight, mDpi, mDocumentWidthInches, mDocumentHeightInches, location);
+    }
+
+    /**
+     * Maps the point from the raw frame to the frame rotated so it is upright, the same way
+     * {@code ImageHandoff} rotates pixels.
+     */
+    @NonNull
+    private static Point toOrientationCorrected(@NonNull Point raw, @NonNull Orientation orientation,
+                                                int rawWidth, int rawHeight) {
+        switch (orientation) {
+            case ORIENTATION_PORTRAIT:
+                return new Point(rawHeight - raw.getY(), raw.getX());
+            case ORIENTATION_PORTRAIT_UPSIDE:
+                return new Point(raw.getY(), rawWidth - raw.getX());
+            case ORIENTATION_LANDSCAPE_LEFT:
+                return new Point(rawWidth - raw.getX(), rawHeight - raw.getY());
+            default:
+                return raw;
+        }
+    }
+
+    /**
+     * Dewarps the region from the frame.
+     *
+     * @param frame Frame on which the document was detected, in full resolution and in the
+     *              coordinate system of the bound document location.
+     * @param config Config of the returned bitmap.
+     * @return Dewarped region or null if document location is not set or is degenerate.
+     */
+    @Nullable
+    public Bitmap dewarp(@NonNull Bitmap frame, @NonNull Bitmap.Config config) {
+        if (mDocumentLocation == null) {
+            return null;
+        }
+        float documentWidth = mDocumentWidthInches * mDpi;
+        float documentHeight = mDocumentHeightInches * mDpi;
+        int width = Math.round(mWidth * documentWidth);
+        int height = Math.round(mHeight * documentHeight);
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        float[] dewarpedDocument = {0.f, 0.f, documentWidth, 0.f, documentWidth, documentHeight, 0.f, documentHeight};
+        Matrix transform = new Matrix();
+        if (!transform.setPolyToPoly(mDocumentLocation, 0, dewarpedDocument, 0, 4)) {
+            return null;
+        }
+        transform.postTranslate(-mX * documentWidth, -mY * documentHeight);
+
+        Bitmap dewarped = Bitmap.createBitmap(width, height, config);
+        new Canvas(dewarped).drawBitmap(frame, transform, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return dewarped;
+    }
+
+    /**
+     * Dewarps several regions of the same document with a single perspective warp. The part of the
+     * document covering all regions is dewarped once at the highest DPI of the regions, and each
+     * region is cropped and resampled from it. Regions bound to a different document location than
+     * the first one are dewarped separately.
+     *
+     * @param frame Frame on which the document was detected, in full resolution.
+     * @param config Config of the returned bitmaps.
+     * @param dewarps Recipes bound to document location, null elements are allowed.
+     * @return Dewarped regions in the same order as recipes, with null elements for null recipes
+     * and for regions which could not be dewarped.
+     */
+    @NonNull
+    public static Bitmap[] dewarpAll(@NonNull Bitmap frame, @NonNull Bitmap.Config config,
+                                     @NonNull DeferredDewarp... dewarps) {
+        Bitmap[] dewarped = new Bitmap[dewarps.length];
+        DeferredDewarp document = null;
+        float left = 1.f, top = 1.f, right = 0.f, bottom = 0.f;
+        int dpi = 0;
+        for (DeferredDewarp dewarp : dewarps) {
+            if (dewarp == null || dewarp.mDocumentLocation == null) {
+                continue;
+            }
+            if (document == null) {
+                document = dewarp;
+            }
+            if (document.isSameDocument(dewarp)) {
+                left = Math.min(left, dewarp.mX);
+                top = Math.min(top, dewarp.mY);
+                right = Math.max(right, dewarp.mX + dewarp.mWidth);
+                bottom = Math.max(bottom, dewarp.mY + dewarp.mHeight);
+                dpi = Math.max(dpi, dewarp.mDpi);
+            }
+        }
+        if (document == null) {
+            return dewarped;
+        }
+
+        DeferredDewarp union = new DeferredDewarp(left, top, right - left, bottom - top, dpi,
+                document.mDocumentWidthInches, document.mDocumentHeightInches, document.mDocumentLocation);
+        Bitmap unionBitmap = union.dewarp(frame, config);
+        boolean unionReturned = false;
+        for (int i = 0; i < dewarps.length; ++i) {
+            DeferredDewarp dewarp = dewarps[i];
+            if (dewarp == null || dewarp.mDocumentLocation == null) {
+                continue;
+            }
+            if (!document.isSameDocument(dewarp)) {
+                dewarped[i] = dewarp.dewarp(frame, config);
+            } else if (unionBitmap != null) {
+                dewarped[i] = union.crop(unionBitmap, dewarp, config);
+                unionReturned |= dewarped[i] == unionBitmap;
+            }
+        }
+        if (unionBitmap != null && !unionReturned) {
+            unionBitmap.recycle();
+        }
+        return dewarped;
+    }
+
+    private boolean isSameDocument(@NonNull DeferredDewarp other) {
+        return mDocumentWidthInches == other.mDocumentWidthInches
+                && mDocumentHeightInches == other.mDocumentHeightInches
+                && Arrays.equals(mDocumentLocation, other.mDocumentLocation);
+    }
+
+    /**
+     * Crops the region from the bitmap dewarped with this recipe, which must contain the region.
+     * Returns the bitmap itself if the region covers it at the same DPI.
+     */
+    @Nullable
+    private Bitmap crop(@NonNull Bitmap dewarpedBitmap, @NonNull DeferredDewarp region, @NonNull Bitmap.Config config) {
+        float documentWidth = mDocumentWidthInches * mDpi;
+        float documentHeight = mDocumentHeightInches * mDpi;
+        Rect source = new Rect(
+                Math.round((region.mX - mX) * documentWidth),
+                Math.round((region.mY - mY) * documentHeight),
+                Math.round((region.mX + region.mWidth - mX) * documentWidth),
+                Math.round((region.mY + region.mHeight - mY) * documentHeight)
+        );
+        int width = Math.round(region.mWidth * mDocumentWidthInches * region.mDpi);
+        int height = Math.round(region.mHeight * mDocumentHeightInches * region.mDpi);
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        if (source.left == 0 && source.top == 0 && width == dewarpedBitmap.getWidth() && height == dewarpedBitmap.getHeight()) {
+            return dewarpedBitmap;
+        }
+
+        Bitmap cropped = Bitmap.createBitmap(width, height, config);
+        new Canvas(cropped).drawBitmap(dewarpedBitmap, source, new RectF(0.f, 0.f, width, height),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        return cropped;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeFloat(mX);
+        dest.writeFloat(mY);
+        dest.writeFloat(mWidth);
+        dest.writeFloat(mHeight);
+        dest.writeInt(mDpi);
+        dest.writeFloat(mDocumentWidthInches);
+        dest.writeFloat(mDocumentHeightInches);
+        dest.writeFloatArray(mDocumentLocation);
+    }
+
+    public static final Creator<DeferredDewarp> CREATOR = new Creator<DeferredDewarp>() {
+        @Override
+        public DeferredDewarp createFromParcel(Parcel source) {
+            return new DeferredDewarp(source.readFloat(), source.readFloat(), source.readFloat(), source.readFloat(),
+                    source.readInt(), source.readFloat(), source.readFloat(), source.createFloatArray());
+        }
+
+        @Override
+        public DeferredDewarp[] newArray(int size) {
+            return new DeferredDewarp[size];
+        }
+    };
+
+}
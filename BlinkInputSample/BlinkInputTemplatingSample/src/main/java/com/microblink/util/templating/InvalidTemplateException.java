@@ -0,0 +1,19 @@
+package com.microblink.util.templating;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Thrown by {@link TemplateCompiler} when template cannot be parsed or fails validation. Message
+ * contains the path of the invalid element, e.g. {@code classes[1].groups[0].boxMm}.
+ */
+public final class InvalidTemplateException extends Exception {
+
+    InvalidTemplateException(@NonNull String path, @NonNull String message) {
+        super(path + ": " + message);
+    }
+
+    InvalidTemplateException(@NonNull String message, @NonNull Throwable cause) {
+        super(message, cause);
+    }
+
+}
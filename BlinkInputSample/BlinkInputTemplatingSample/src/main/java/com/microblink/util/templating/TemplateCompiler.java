@@ -0,0 +1,332 @@
+package com.microblink.util.templating;
+
+import com.microblink.blinkinput.entities.detectors.quad.document.DocumentDetector;
+import com.microblink.blinkinput.entities.detectors.quad.document.DocumentSpecification;
+import com.microblink.blinkinput.entities.detectors.quad.document.DocumentSpecificationPreset;
+import com.microblink.blinkinput.entities.ocrengine.legacy.BlinkOCREngineOptions;
+import com.microblink.blinkinput.entities.parsers.Parser;
+import com.microblink.blinkinput.entities.parsers.date.DateParser;
+import com.microblink.blinkinput.entities.parsers.regex.RegexParser;
+import com.microblink.blinkinput.entities.processors.Processor;
+import com.microblink.blinkinput.entities.processors.imageReturn.ImageReturnProcessor;
+import com.microblink.blinkinput.entities.processors.parserGroup.ParserGroupProcessor;
+import com.microblink.blinkinput.entities.recognizers.detector.DetectorRecognizer;
+import com.microblink.blinkinput.entities.recognizers.templating.DewarpPolicy;
+import com.microblink.blinkinput.entities.recognizers.templating.ProcessorGroup;
+import com.microblink.blinkinput.entities.recognizers.templating.TemplatingClass;
+import com.microblink.blinkinput.entities.recognizers.templating.dewarpPolicies.DPIBasedDewarpPolicy;
+import com.microblink.blinkinput.entities.recognizers.templating.dewarpPolicies.FixedDewarpPolicy;
+import com.microblink.blinkinput.entities.recognizers.templating.dewarpPolicies.NoUpScalingDewarpPolicy;
+import com.microblink.blinkinput.geometry.Rectangle;
+import com.microblink.blinkinput.results.ocr.OcrFont;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Builds a {@link DetectorRecognizer} with its {@link TemplatingClass}es from a declarative JSON
+ * template, see {@code assets/templates/croatian_id_front.json} for an example.
+ * <p>
+ * Template defines the document size and the boxes of processor groups in millimetres, as measured
+ * with a ruler on the document, and compiler converts them into relative {@link Rectangle}s.
+ * Parsers and processors are defined once by name and referenced from processor groups of any
+ * class. Template is validated while it is compiled and errors are reported with the path of the
+ * invalid element:
+ * <ul>
+ *     <li>{@code formatVersion} must be {@value #FORMAT_VERSION}</li>
+ *     <li>{@code document}: {@code preset} is a {@link DocumentSpecificationPreset} without its
+ *     prefix, {@code widthMm} and {@code heightMm} are positive</li>
+ *     <li>{@code parsers}: {@code regex} with {@code pattern}, optional {@code whitelist} of
+ *     {@code digits}, {@code uppercase}, {@code lowercase} and {@code chars}, {@code minCharHeight},
+ *     {@code startWithWhitespace} and {@code endWithWhitespace}; or {@code date}</li>
+ *     <li>{@code processors}: {@code parserGroup} with {@code parsers}, each parser belongs to at most
+ *     one group; or {@code imageReturn}</li>
+ *     <li>{@code classes}: unique {@code name}, {@code classificationGroups} and optional
+ *     {@code groups}, each with {@code boxMm} as [left, top, right, bottom] within the document,
+ *     {@code dewarp} and {@code processors}; {@code classifier} of type {@code validParsers} whose
+ *     parsers must belong to classification groups, as only those are executed before classification</li>
+ *     <li>{@code dewarp}: {@code fixedHeight} with {@code heightPx}, {@code dpi} with {@code dpi}
+ *     between 100 and 400, or {@code noUpScaling} with optional {@code maxHeightPx}</li>
+ * </ul>
+ * Use {@link CompiledTemplateCache} to avoid compiling unchanged templates again.
+ */
+public final class TemplateCompiler {
+
+    public static final int FORMAT_VERSION = 1;
+
+    private static final String PRESET_PREFIX = "DOCUMENT_SPECIFICATION_PRESET_";
+    private static final int MAX_DEWARP_HEIGHT = 65535;
+
+    private float mDocumentWidthMm;
+    private float mDocumentHeightMm;
+    private final Map<String, Parser<?>> mParsers = new LinkedHashMap<>();
+    private final Map<String, Processor<?>> mProcessors = new LinkedHashMap<>();
+    private final Map<String, ImageReturnProcessor> mImageProcessors = new LinkedHashMap<>();
+    /** Parsers of each parser group processor, for validating classifiers. */
+    private final Map<String, String[]> mProcessorParsers = new LinkedHashMap<>();
+    private final Map<String, TemplatingClass> mClasses = new LinkedHashMap<>();
+
+    /**
+     * Compiles the template. Compiler instance is not reusable, create a new one for each template.
+     */
+    @NonNull
+    public CompiledTemplate compile(@NonNull String template) throws InvalidTemplateException {
+        try {
+            JSONObject root = new JSONObject(template);
+            int formatVersion = root.getInt("formatVersion");
+            if (formatVersion != FORMAT_VERSION) {
+                throw new InvalidTemplateException("formatVersion", "unsupported version " + formatVersion);
+            }
+            DocumentDetector documentDetector = compileDocument(root.getJSONObject("document"));
+            compileParsers(root.getJSONObject("parsers"));
+            compileProcessors(root.getJSONObject("processors"));
+            JSONArray classes = root.getJSONArray("classes");
+            if (classes.length() == 0) {
+                throw new InvalidTemplateException("classes", "at least one class is required");
+            }
+            for (int i = 0; i < classes.length(); ++i) {
+                compileClass("classes[" + i + "]", classes.getJSONObject(i));
+            }
+
+            DetectorRecognizer detectorRecognizer = new DetectorRecognizer(documentDetector);
+            detectorRecognizer.setTemplatingClasses(mClasses.values().toArray(new TemplatingClass[0]));
+            detectorRecognizer.setAllowFlippedRecognition(root.getJSONObject("document").optBoolean("allowFlippedRecognition"));
+            return new CompiledTemplate(detectorRecognizer, mParsers, mImageProcessors, mClasses);
+        } catch (JSONException e) {
+            throw new InvalidTemplateException("Template is not valid JSON or has missing elements", e);
+        }
+    }
+
+    @NonNull
+    private DocumentDetector compileDocument(@NonNull JSONObject document) throws JSONException, InvalidTemplateException {
+        mDocumentWidthMm = positive("document.widthMm", (float) document.getDouble("widthMm"));
+        mDocumentHeightMm = positive("document.heightMm", (float) document.getDouble("heightMm"));
+        DocumentSpecificationPreset preset;
+        try {
+            preset = DocumentSpecificationPreset.valueOf(PRESET_PREFIX + document.getString("preset"));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidTemplateException("document.preset", "unknown preset " + document.getString("preset"));
+        }
+        return new DocumentDetector(DocumentSpecification.createFromPreset(preset));
+    }
+
+    private void compileParsers(@NonNull JSONObject parsers) throws JSONException, InvalidTemplateException {
+        Iterator<String> names = parsers.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            String path = "parsers." + name;
+            JSONObject parser = parsers.getJSONObject(name);
+            String type = parser.getString("type");
+            if ("regex".equals(type)) {
+                mParsers.put(name, compileRegexParser(path, parser));
+            } else if ("date".equals(type)) {
+                mParsers.put(name, new DateParser());
+            } else {
+                throw new InvalidTemplateException(path + ".type", "unknown parser type " + type);
+            }
+        }
+    }
+
+    @NonNull
+    private RegexParser compileRegexParser(@NonNull String path, @NonNull JSONObject parser) throws JSONException, InvalidTemplateException {
+        String pattern = parser.getString("pattern");
+        if (pattern.isEmpty()) {
+            throw new InvalidTemplateException(path + ".pattern", "pattern must not be empty");
+        }
+        RegexParser regexParser = new RegexParser(pattern);
+        BlinkOCREngineOptions options = (BlinkOCREngineOptions) regexParser.getOcrEngineOptions();
+
+        JSONObject whitelist = parser.optJSONObject("whitelist");
+        if (whitelist != null) {
+            if (whitelist.optBoolean("digits")) {
+                options.addAllDigitsToWhitelist(OcrFont.OCR_FONT_ANY);
+            }
+            if (whitelist.optBoolean("uppercase")) {
+                options.addUppercaseCharsToWhitelist(OcrFont.OCR_FONT_ANY);
+            }
+            if (whitelist.optBoolean("lowercase")) {
+                options.addLowercaseCharsToWhitelist(OcrFont.OCR_FONT_ANY);
+            }
+            String chars = whitelist.optString("chars");
+            for (int i = 0; i < chars.length(); ++i) {
+                options.addCharToWhitelist(chars.charAt(i), OcrFont.OCR_FONT_ANY);
+            }
+        }
+        if (parser.has("minCharHeight")) {
+            options.setMinimumCharHeight((int) positive(path + ".minCharHeight", parser.getInt("minCharHeight")));
+        }
+        regexParser.setStartWithWhitespace(parser.optBoolean("startWithWhitespace"));
+        regexParser.setEndWithWhitespace(parser.optBoolean("endWithWhitespace"));
+        return regexParser;
+    }
+
+    private void compileProcessors(@NonNull JSONObject processors) throws JSONException, InvalidTemplateException {
+        Set<String> groupedParsers = new HashSet<>();
+        Iterator<String> names = processors.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            String path = "processors." + name;
+            JSONObject processor = processors.getJSONObject(name);
+            String type = processor.getString("type");
+            if ("parserGroup".equals(type)) {
+                JSONArray parserNames = processor.getJSONArray("parsers");
+                String[] groupParserNames = new String[parserNames.length()];
+                Parser<?>[] parsers = new Parser<?>[parserNames.length()];
+                for (int i = 0; i < parsers.length; ++i) {
+                    groupParserNames[i] = parserNames.getString(i);
+                    parsers[i] = reference(path + ".parsers[" + i + "]", mParsers, groupParserNames[i]);
+                    if (!groupedParsers.add(groupParserNames[i])) {
+                        throw new InvalidTemplateException(path + ".parsers[" + i + "]",
+                                "parser " + groupParserNames[i] + " already belongs to another parser group");
+                    }
+                }
+                if (parsers.length == 0) {
+                    throw new InvalidTemplateException(path + ".parsers", "parser group must not be empty");
+                }
+                mProcessors.put(name, new ParserGroupProcessor(parsers));
+                mProcessorParsers.put(name, groupParserNames);
+            } else if ("imageReturn".equals(type)) {
+                ImageReturnProcessor imageProcessor = new ImageReturnProcessor();
+                mProcessors.put(name, imageProcessor);
+                mImageProcessors.put(name, imageProcessor);
+            } else {
+                throw new InvalidTemplateException(path + ".type", "unknown processor type " + type);
+            }
+        }
+    }
+
+    private void compileClass(@NonNull String path, @NonNull JSONObject templatingClass) throws JSONException, InvalidTemplateException {
+        String name = templatingClass.getString("name");
+        if (name.isEmpty() || mClasses.containsKey(name)) {
+            throw new InvalidTemplateException(path + ".name", "class name must be unique and not empty");
+        }
+
+        Set<String> classificationParsers = new HashSet<>();
+        ProcessorGroup[] classificationGroups = compileGroups(path + ".classificationGroups",
+                templatingClass.getJSONArray("classificationGroups"), classificationParsers);
+        JSONArray groups = templatingClass.optJSONArray("groups");
+        ProcessorGroup[] nonClassificationGroups = groups != null
+                ? compileGroups(path + ".groups", groups, new HashSet<String>())
+                : new ProcessorGroup[0];
+
+        JSONObject classifier = templatingClass.getJSONObject("classifier");
+        if (!"validParsers".equals(classifier.getString("type"))) {
+            throw new InvalidTemplateException(path + ".classifier.type", "unknown classifier type " + classifier.getString("type"));
+        }
+        JSONArray parserNames = classifier.getJSONArray("parsers");
+        Parser<?>[] parsers = new Parser<?>[parserNames.length()];
+        for (int i = 0; i < parsers.length; ++i) {
+            String parserPath = path + ".classifier.parsers[" + i + "]";
+            parsers[i] = reference(parserPath, mParsers, parserNames.getString(i));
+            if (!classificationParsers.contains(parserNames.getString(i))) {
+                throw new InvalidTemplateException(parserPath, "classifier can only use parsers from classificationGroups");
+            }
+        }
+
+        TemplatingClass compiled = new TemplatingClass();
+        compiled.setTemplatingClassifier(new ValidParsersClassifier(compiled, parsers));
+        compiled.setClassificationProcessorGroups(classificationGroups);
+        compiled.setNonClassificationProcessorGroups(nonClassificationGroups);
+        mClasses.put(name, compiled);
+    }
+
+    /**
+     * @param groupedParsers Receives names of parsers used by the groups.
+     */
+    @NonNull
+    private ProcessorGroup[] compileGroups(@NonNull String path, @NonNull JSONArray groups,
+                                           @NonNull Set<String> groupedParsers) throws JSONException, InvalidTemplateException {
+        ProcessorGroup[] compiled = new ProcessorGroup[groups.length()];
+        for (int i = 0; i < compiled.length; ++i) {
+            String groupPath = path + "[" + i + "]";
+            JSONObject group = groups.getJSONObject(i);
+            Rectangle location = compileBox(groupPath + ".boxMm", group.getJSONArray("boxMm"));
+            DewarpPolicy dewarpPolicy = compileDewarpPolicy(groupPath + ".dewarp", group.getJSONObject("dewarp"));
+
+            JSONArray processorNames = group.getJSONArray("processors");
+            if (processorNames.length() == 0) {
+                throw new InvalidTemplateException(groupPath + ".processors", "processor group must not be empty");
+            }
+            Processor<?>[] processors = new Processor<?>[processorNames.length()];
+            for (int j = 0; j < processors.length; ++j) {
+                String processorName = processorNames.getString(j);
+                processors[j] = reference(groupPath + ".processors[" + j + "]", mProcessors, processorName);
+                String[] parserNames = mProcessorParsers.get(processorName);
+                if (parserNames != null) {
+                    for (String parserName : parserNames) {
+                        groupedParsers.add(parserName);
+                    }
+                }
+            }
+            compiled[i] = new ProcessorGroup(location, dewarpPolicy, processors);
+        }
+        return compiled;
+    }
+
+    @NonNull
+    private Rectangle compileBox(@NonNull String path, @NonNull JSONArray box) throws JSONException, InvalidTemplateException {
+        if (box.length() != 4) {
+            throw new InvalidTemplateException(path, "box must be [left, top, right, bottom]");
+        }
+        float left = (float) box.getDouble(0);
+        float top = (float) box.getDouble(1);
+        float right = (float) box.getDouble(2);
+        float bottom = (float) box.getDouble(3);
+        if (left < 0 || left >= right || right > mDocumentWidthMm) {
+            throw new InvalidTemplateException(path, "box must satisfy 0 <= left < right <= " + mDocumentWidthMm);
+        }
+        if (top < 0 || top >= bottom || bottom > mDocumentHeightMm) {
+            throw new InvalidTemplateException(path, "box must satisfy 0 <= top < bottom <= " + mDocumentHeightMm);
+        }
+        return new Rectangle(left / mDocumentWidthMm, top / mDocumentHeightMm,
+                (right - left) / mDocumentWidthMm, (bottom - top) / mDocumentHeightMm);
+    }
+
+    @NonNull
+    private static DewarpPolicy compileDewarpPolicy(@NonNull String path, @NonNull JSONObject dewarp) throws JSONException, InvalidTemplateException {
+        String type = dewarp.getString("type");
+        if ("fixedHeight".equals(type)) {
+            return new FixedDewarpPolicy(inRange(path + ".heightPx", dewarp.getInt("heightPx"), 1, MAX_DEWARP_HEIGHT));
+        } else if ("dpi".equals(type)) {
+            return new DPIBasedDewarpPolicy(inRange(path + ".dpi", dewarp.getInt("dpi"), 100, 400));
+        } else if ("noUpScaling".equals(type)) {
+            return dewarp.has("maxHeightPx")
+                    ? new NoUpScalingDewarpPolicy(inRange(path + ".maxHeightPx", dewarp.getInt("maxHeightPx"), 1, MAX_DEWARP_HEIGHT))
+                    : new NoUpScalingDewarpPolicy();
+        }
+        throw new InvalidTemplateException(path + ".type", "unknown dewarp policy " + type);
+    }
+
+    @NonNull
+    private static <T> T reference(@NonNull String path, @NonNull Map<String, T> defined, @NonNull String name) throws InvalidTemplateException {
+        T value = defined.get(name);
+        if (value == null) {
+            throw new InvalidTemplateException(path, name + " is not defined");
+        }
+        return value;
+    }
+
+    private static float positive(@NonNull String path, float value) throws InvalidTemplateException {
+        if (!(value > 0)) {
+            throw new InvalidTemplateException(path, "must be positive");
+        }
+        return value;
+    }
+
+    private static int inRange(@NonNull String path, int value, int min, int max) throws InvalidTemplateException {
+        if (value < min || value > max) {
+            throw new InvalidTemplateException(path, "must be between " + min + " and " + max);
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.microblink.util.templating;
+
+import android.content.SharedPreferences;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Decides the order in which {@code TemplatingClass}es are evaluated.
+ * <p>
+ * {@code TemplatingRecognizer} evaluates classes in the order they were set and continues to the
+ * next class only if the classifier of the current one returns false. Every evaluated class runs
+ * OCR on its classification processor groups, so the order should put first the classes which are
+ * likely to match. Here classes are sorted by the number of times they were recognized in previous
+ * scanning sessions, which assumes classification of all classes costs about the same.
+ */
+public final class TemplatingClassScheduler {
+
+    private static final String KEY_PREFIX_HITS = "hits.";
+
+    private final SharedPreferences mPreferences;
+
+    /**
+     * @param preferences Preferences in which recognized classes are counted, should be private to
+     *                    one set of templating classes.
+     */
+    public TemplatingClassScheduler(@NonNull SharedPreferences preferences) {
+        mPreferences = preferences;
+    }
+
+    /**
+     * Records that the class has been recognized in a scanning session.
+     */
+    public void recordHit(@NonNull String classKey) {
+        String key = KEY_PREFIX_HITS + classKey;
+        mPreferences.edit().putInt(key, mPreferences.getInt(key, 0) + 1).apply();
+    }
+
+    /**
+     * @param classKeys Keys of the classes, as used in {@link #recordHit(String)}.
+     * @return Indices of the classes in order in which they should be evaluated, most often
+     * recognized first.
+     */
+    @NonNull
+    public Integer[] order(@NonNull String[] classKeys) {
+        final int[] hits = new int[classKeys.length];
+        Integer[] order = new Integer[classKeys.length];
+        for (int i = 0; i < classKeys.length; ++i) {
+            hits[i] = mPreferences.getInt(KEY_PREFIX_HITS + classKeys[i], 0);
+            order[i] = i;
+        }
+        // stable sort keeps given order of classes which were recognized equally often
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                return Integer.compare(hits[second], hits[first]);
+            }
+        });
+        return order;
+    }
+
+}
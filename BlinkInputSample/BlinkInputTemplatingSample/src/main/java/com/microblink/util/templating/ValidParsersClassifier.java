@@ -0,0 +1,75 @@
+package com.microblink.util.templating;
+
+import android.os.Parcel;
+
+import com.microblink.blinkinput.entities.parsers.Parser;
+import com.microblink.blinkinput.entities.recognizers.templating.TemplatingClass;
+import com.microblink.blinkinput.entities.recognizers.templating.TemplatingClassifier;
+import com.microblink.blinkinput.entities.recognizers.templating.parcelization.ParserParcelization;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@link TemplatingClassifier} which accepts the class if all given parsers from its classification
+ * processor groups have valid results. Generalization of the classifier used in
+ * {@link CroatianIDFrontSideTemplatingUtil}, see it for explanation of parcelization.
+ */
+final class ValidParsersClassifier implements TemplatingClassifier {
+
+    private TemplatingClass mMyTemplatingClass;
+    private Parser<?>[] mParsers;
+    private ParserParcelization[] mParcelizedParsers;
+
+    /**
+     * @param myTemplatingClass associated templating class for which the classifier is responsible.
+     * @param parsers parsers from classification processor groups of the class which must be valid.
+     */
+    ValidParsersClassifier(@NonNull TemplatingClass myTemplatingClass, @NonNull Parser<?>... parsers) {
+        mMyTemplatingClass = myTemplatingClass;
+        mParsers = parsers;
+    }
+
+    @Override
+    public boolean classify(@NonNull TemplatingClass currentClass) {
+        int numParsers = mMyTemplatingClass == currentClass ? mParsers.length : mParcelizedParsers.length;
+        for (int i = 0; i < numParsers; ++i) {
+            Parser<?> parser = mMyTemplatingClass == currentClass ? mParsers[i] : mParcelizedParsers[i].getParser(currentClass);
+            if (parser.getResult().getResultState() != Parser.Result.State.Valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(mParsers.length);
+        for (Parser<?> parser : mParsers) {
+            new ParserParcelization(parser, mMyTemplatingClass).writeToParcel(dest, flags);
+        }
+    }
+
+    private ValidParsersClassifier(Parcel in) {
+        mParcelizedParsers = new ParserParcelization[in.readInt()];
+        for (int i = 0; i < mParcelizedParsers.length; ++i) {
+            mParcelizedParsers[i] = ParserParcelization.CREATOR.createFromParcel(in);
+        }
+    }
+
+    public static final Creator<ValidParsersClassifier> CREATOR = new Creator<ValidParsersClassifier>() {
+        @Override
+        public ValidParsersClassifier createFromParcel(Parcel source) {
+            return new ValidParsersClassifier(source);
+        }
+
+        @Override
+        public ValidParsersClassifier[] newArray(int size) {
+            return new ValidParsersClassifier[size];
+        }
+    };
+}
@@ -0,0 +1,62 @@
+package com.microblink.blinkinput.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Creates an object once on a background thread, so expensive setup, e.g. building a templating
+ * recognizer with many parsers and processor groups, overlaps with UI startup instead of blocking
+ * it. Keep the initializer in a static field to build the object only once per process, instead of
+ * every time the activity is recreated.
+ */
+public final class BackgroundInitializer<T> {
+
+    private final Callable<T> mInitializer;
+    private Future<T> mResult;
+
+    public BackgroundInitializer(@NonNull Callable<T> initializer) {
+        mInitializer = initializer;
+    }
+
+    /**
+     * Starts creating the object if it has not been started yet. Returns immediately.
+     */
+    public synchronized void start() {
+        if (mResult == null) {
+            mResult = BigCoreExecutor.getInstance().getExecutorService().submit(mInitializer);
+        }
+    }
+
+    /**
+     * @return The object, waiting for it to be created if needed.
+     * @throws IllegalStateException If the initializer has thrown.
+     */
+    @NonNull
+    public T get() {
+        Future<T> result;
+        synchronized (this) {
+            start();
+            result = mResult;
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return result.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Initialization failed", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
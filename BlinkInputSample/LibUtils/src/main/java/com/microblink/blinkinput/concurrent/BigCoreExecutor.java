@@ -0,0 +1,116 @@
+package com.microblink.blinkinput.concurrent;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Bounded worker pool for running independent CPU bound tasks in parallel.
+ * <p>
+ * On big.LITTLE devices, spreading work over all cores makes the tasks scheduled on little cores
+ * finish last, so the pool has one thread per big core. Cores are considered big if their maximum
+ * frequency is above the lowest maximum frequency among all cores; if all cores are the same or
+ * frequencies cannot be read, all cores are used.
+ */
+public final class BigCoreExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 5;
+
+    private static BigCoreExecutor sInstance;
+    private static volatile int sBigCoreCount;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * @return Executor shared by the whole application.
+     */
+    @NonNull
+    public static synchronized BigCoreExecutor getInstance() {
+        if (sInstance == null) {
+            // instance is usually first needed on the main thread, so the pool starts with all cores
+            // and shrinks to big cores once their frequencies are read on the worker thread
+            final BigCoreExecutor instance = new BigCoreExecutor(Runtime.getRuntime().availableProcessors());
+            instance.mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    instance.setNumThreads(getBigCoreCount());
+                }
+            });
+            sInstance = instance;
+        }
+        return sInstance;
+    }
+
+    /**
+     * Reads maximum frequencies of all cores from sysfs on the first call.
+     *
+     * @return Number of big cores, at least 1.
+     */
+    @WorkerThread
+    public static int getBigCoreCount() {
+        // not synchronized with getInstance(), which must not wait for sysfs, counting the cores
+        // twice in a race gives the same result
+        if (sBigCoreCount == 0) {
+            sBigCoreCount = countBigCores(Runtime.getRuntime().availableProcessors());
+        }
+        return sBigCoreCount;
+    }
+
+    /**
+     * @param numThreads Maximum number of tasks run concurrently.
+     */
+    public BigCoreExecutor(int numThreads) {
+        mExecutor = new ThreadPoolExecutor(numThreads, numThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        // threads are not needed while there is nothing to run
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @NonNull
+    public ExecutorService getExecutorService() {
+        return mExecutor;
+    }
+
+    private void setNumThreads(int numThreads) {
+        // pool only shrinks, so core size is lowered first to stay within the maximum size
+        mExecutor.setCorePoolSize(numThreads);
+        mExecutor.setMaximumPoolSize(numThreads);
+    }
+
+    private static int countBigCores(int numCores) {
+        long[] maxFrequencies = new long[numCores];
+        long lowest = Long.MAX_VALUE;
+        for (int i = 0; i < numCores; ++i) {
+            maxFrequencies[i] = readMaxFrequency(i);
+            if (maxFrequencies[i] <= 0) {
+                return Math.max(1, numCores);
+            }
+            lowest = Math.min(lowest, maxFrequencies[i]);
+        }
+        int bigCores = 0;
+        for (long maxFrequency : maxFrequencies) {
+            if (maxFrequency > lowest) {
+                ++bigCores;
+            }
+        }
+        return bigCores > 0 ? bigCores : Math.max(1, numCores);
+    }
+
+    private static long readMaxFrequency(int core) {
+        String path = "/sys/devices/system/cpu/cpu" + core + "/cpufreq/cpuinfo_max_freq";
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line = reader.readLine();
+            return line != null ? Long.parseLong(line.trim()) : -1;
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
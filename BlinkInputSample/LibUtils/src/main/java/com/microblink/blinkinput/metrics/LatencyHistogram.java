@@ -0,0 +1,158 @@
+package com.microblink.blinkinput.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets.
+ * <p>
+ * Values are recorded with microsecond resolution. Each power-of-two range is split into 32 linear
+ * sub-buckets, so every reported value is within ~3% of the recorded one, for latencies ranging from
+ * one microsecond to several hours. Recording never allocates and can be done from any thread.
+ */
+public final class LatencyHistogram {
+
+    /** Number of bits used for linear sub-buckets within single power-of-two range. */
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_COUNT = SUB_BUCKET_HALF_COUNT << 1;
+    /** Largest value that can be recorded, in microseconds (around 19 hours). */
+    private static final long MAX_TRACKABLE_MICROS = (1L << 36) - 1;
+    private static final int NUM_BUCKETS = indexOf(MAX_TRACKABLE_MICROS) + 1;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong mTotalCount = new AtomicLong();
+    private final AtomicLong mTotalNanos = new AtomicLong();
+    private final AtomicLong mMinNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    /**
+     * Records single latency measurement.
+     *
+     * @param latencyNanos Latency in nanoseconds, as measured with {@link System#nanoTime()}.
+     *                     Negative values are ignored.
+     */
+    public void record(long latencyNanos) {
+        if (latencyNanos < 0) {
+            return;
+        }
+        long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_TRACKABLE_MICROS);
+        mCounts.incrementAndGet(indexOf(micros));
+        mTotalCount.incrementAndGet();
+        mTotalNanos.addAndGet(latencyNanos);
+
+        long min;
+        while (latencyNanos < (min = mMinNanos.get()) && !mMinNanos.compareAndSet(min, latencyNanos)) {
+            // retry
+        }
+        long max;
+        while (latencyNanos > (max = mMaxNanos.get()) && !mMaxNanos.compareAndSet(max, latencyNanos)) {
+            // retry
+        }
+    }
+
+    /**
+     * @return Number of recorded measurements.
+     */
+    public long getCount() {
+        return mTotalCount.get();
+    }
+
+    /**
+     * @return Smallest recorded latency in nanoseconds or 0 if nothing was recorded.
+     */
+    public long getMinNanos() {
+        long min = mMinNanos.get();
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    /**
+     * @return Largest recorded latency in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return mMaxNanos.get();
+    }
+
+    /**
+     * @return Mean of all recorded latencies in nanoseconds or 0 if nothing was recorded.
+     */
+    public long getMeanNanos() {
+        long count = mTotalCount.get();
+        return count == 0 ? 0 : mTotalNanos.get() / count;
+    }
+
+    /**
+     * Returns the latency below which given percentage of measurements fall.
+     *
+     * @param percentile Percentile in range [0, 100].
+     * @return Latency in nanoseconds or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = mTotalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        double clamped = Math.min(Math.max(percentile, 0.0), 100.0);
+        long target = Math.max(1, (long) Math.ceil(clamped / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; ++i) {
+            seen += mCounts.get(i);
+            if (seen >= target) {
+                return Math.min(TimeUnit.MICROSECONDS.toNanos(highestEquivalentValue(i)), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Clears all recorded measurements.
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; ++i) {
+            mCounts.set(i, 0);
+        }
+        mTotalCount.set(0);
+        mTotalNanos.set(0);
+        mMinNanos.set(Long.MAX_VALUE);
+        mMaxNanos.set(0);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "count=" + getCount()
+                + ", min=" + toMillis(getMinNanos())
+                + " ms, mean=" + toMillis(getMeanNanos())
+                + " ms, p50=" + toMillis(getValueAtPercentile(50))
+                + " ms, p90=" + toMillis(getValueAtPercentile(90))
+                + " ms, p99=" + toMillis(getValueAtPercentile(99))
+                + " ms, max=" + toMillis(getMaxNanos()) + " ms";
+    }
+
+    private static String toMillis(long nanos) {
+        return String.valueOf(nanos / 1_000_000.0);
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = msb - SUB_BUCKET_BITS;
+        int subBucket = (int) (micros >>> shift) - SUB_BUCKET_HALF_COUNT;
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + subBucket;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
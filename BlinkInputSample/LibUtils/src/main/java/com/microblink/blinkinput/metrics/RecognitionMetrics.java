@@ -0,0 +1,170 @@
+package com.microblink.blinkinput.metrics;
+
+import com.microblink.blinkinput.recognition.RecognitionSuccessType;
+import com.microblink.blinkinput.view.recognition.ScanResultListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Counters and latency histogram describing throughput of a recognition pipeline.
+ * <p>
+ * When using {@link com.microblink.blinkinput.directApi.RecognizerRunner}, call
+ * {@link #onFrameSubmitted()} right before each {@code recognize*} call, {@link #onFrameDropped()}
+ * whenever a frame is skipped because recognizer is not {@code READY}, {@link #onFrameRejected()}
+ * whenever a frame is skipped by a frame quality check and
+ * {@link #onRecognitionDone(RecognitionSuccessType, long)} from the {@link ScanResultListener}.
+ * <p>
+ * When using {@link com.microblink.blinkinput.view.recognition.RecognizerRunnerView}, frames are
+ * submitted internally by the view, so only recognition outcomes can be tracked: wrap the scan
+ * result listener with {@link #wrap(ScanResultListener)} before setting it to the view.
+ * <p>
+ * All methods are thread safe and can be queried or reset at any time.
+ */
+public final class RecognitionMetrics {
+
+    private final AtomicLong mFramesSubmitted = new AtomicLong();
+    private final AtomicLong mFramesDropped = new AtomicLong();
+    private final AtomicLong mFramesRejected = new AtomicLong();
+    private final AtomicLong mSuccessfulRecognitions = new AtomicLong();
+    private final AtomicLong mPartialRecognitions = new AtomicLong();
+    private final AtomicLong mUnsuccessfulRecognitions = new AtomicLong();
+    private final LatencyHistogram mRecognitionLatency = new LatencyHistogram();
+
+    /**
+     * Marks that frame has been submitted for recognition.
+     *
+     * @return Timestamp which needs to be passed to {@link #onRecognitionDone(RecognitionSuccessType, long)}.
+     */
+    public long onFrameSubmitted() {
+        mFramesSubmitted.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Marks that frame has been dropped because recognizer was not ready to process it.
+     */
+    public void onFrameDropped() {
+        mFramesDropped.incrementAndGet();
+    }
+
+    /**
+     * Marks that frame has been rejected before recognition because of its poor quality.
+     */
+    public void onFrameRejected() {
+        mFramesRejected.incrementAndGet();
+    }
+
+    /**
+     * Marks that recognition of the submitted frame has completed.
+     *
+     * @param successType        Outcome of the recognition.
+     * @param submittedTimestamp Timestamp returned by {@link #onFrameSubmitted()}.
+     * @return Recognition latency in nanoseconds.
+     */
+    public long onRecognitionDone(@NonNull RecognitionSuccessType successType, long submittedTimestamp) {
+        long latency = System.nanoTime() - submittedTimestamp;
+        mRecognitionLatency.record(latency);
+        countOutcome(successType);
+        return latency;
+    }
+
+    /**
+     * Wraps given listener so that outcome of each recognition reported to it is counted. Intended
+     * for {@link com.microblink.blinkinput.view.recognition.RecognizerRunnerView} which does not
+     * expose individual frames.
+     *
+     * @param listener Listener that will receive the results.
+     * @return Listener that needs to be given to the recognition component.
+     */
+    @NonNull
+    public ScanResultListener wrap(@NonNull final ScanResultListener listener) {
+        return new ScanResultListener() {
+            @Override
+            public void onScanningDone(@NonNull RecognitionSuccessType recognitionSuccessType) {
+                countOutcome(recognitionSuccessType);
+                listener.onScanningDone(recognitionSuccessType);
+            }
+
+            @Override
+            public void onUnrecoverableError(@NonNull Throwable throwable) {
+                listener.onUnrecoverableError(throwable);
+            }
+        };
+    }
+
+    public long getFramesSubmitted() {
+        return mFramesSubmitted.get();
+    }
+
+    public long getFramesDropped() {
+        return mFramesDropped.get();
+    }
+
+    public long getFramesRejected() {
+        return mFramesRejected.get();
+    }
+
+    public long getSuccessfulRecognitions() {
+        return mSuccessfulRecognitions.get();
+    }
+
+    public long getPartialRecognitions() {
+        return mPartialRecognitions.get();
+    }
+
+    public long getUnsuccessfulRecognitions() {
+        return mUnsuccessfulRecognitions.get();
+    }
+
+    /**
+     * @return Histogram of latencies between frame submission and recognition completion.
+     */
+    @NonNull
+    public LatencyHistogram getRecognitionLatency() {
+        return mRecognitionLatency;
+    }
+
+    /**
+     * Clears all counters and the latency histogram.
+     */
+    public void reset() {
+        mFramesSubmitted.set(0);
+        mFramesDropped.set(0);
+        mFramesRejected.set(0);
+        mSuccessfulRecognitions.set(0);
+        mPartialRecognitions.set(0);
+        mUnsuccessfulRecognitions.set(0);
+        mRecognitionLatency.reset();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "submitted=" + getFramesSubmitted()
+                + ", dropped=" + getFramesDropped()
+                + ", rejected=" + getFramesRejected()
+                + ", successful=" + getSuccessfulRecognitions()
+                + ", partial=" + getPartialRecognitions()
+                + ", unsuccessful=" + getUnsuccessfulRecognitions()
+                + ", latency: " + mRecognitionLatency;
+    }
+
+    private void countOutcome(@NonNull RecognitionSuccessType successType) {
+        switch (successType) {
+            case SUCCESSFUL:
+                mSuccessfulRecognitions.incrementAndGet();
+                break;
+            case PARTIAL:
+            // completed stage of multi-stage recognition is not a final result yet
+            case STAGE_SUCCESSFUL:
+                mPartialRecognitions.incrementAndGet();
+                break;
+            case UNSUCCESSFUL:
+                mUnsuccessfulRecognitions.incrementAndGet();
+                break;
+        }
+    }
+
+}
@@ -0,0 +1,374 @@
+package com.microblink.blinkinput.serialization;
+
+import android.graphics.Bitmap;
+import android.util.JsonWriter;
+
+import com.microblink.blinkinput.entities.Entity;
+import com.microblink.blinkinput.entities.recognizers.Recognizer;
+import com.microblink.blinkinput.image.Image;
+import com.microblink.blinkinput.results.ocr.CharWithVariants;
+import com.microblink.blinkinput.results.ocr.OcrBlock;
+import com.microblink.blinkinput.results.ocr.OcrChar;
+import com.microblink.blinkinput.results.ocr.OcrLine;
+import com.microblink.blinkinput.results.ocr.OcrResult;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Streams recognizer, parser and OCR results as JSON directly to a {@link Writer} or an
+ * {@link OutputStream}, without building intermediate strings.
+ * <p>
+ * Result classes differ between recognizers, so fields of {@link Entity.Result} subclasses are
+ * discovered from their public getters, e.g. {@code getFirstName()} is written as
+ * {@code "firstName"}. Getters of each class are looked up only once. {@link OcrResult} is written
+ * as a compact tree of blocks, lines and chars. Images are never serialized.
+ * <p>
+ * Use {@link #setFieldFilter(FieldFilter)} to persist only selected fields of the results.
+ */
+public final class ResultSerializer {
+
+    /**
+     * Selects which fields of the results are written.
+     */
+    public interface FieldFilter {
+        /**
+         * @param resultClass Class of the result which owns the field.
+         * @param fieldName   Name of the field, as it appears in JSON.
+         * @return Whether the field should be written.
+         */
+        boolean shouldWrite(@NonNull Class<?> resultClass, @NonNull String fieldName);
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Nested non-result objects are written up to this depth, deeper objects are written as strings. */
+    private static final int MAX_NESTING_DEPTH = 4;
+
+    /** Getters which are part of the SDK infrastructure, not of the result data. */
+    private static final Set<String> IGNORED_GETTERS = new HashSet<>(Arrays.asList(
+            "getClass", "getNativeContext", "isEmpty"));
+
+    private static final Map<Class<?>, List<Property>> sPropertiesCache = new ConcurrentHashMap<>();
+
+    private FieldFilter mFieldFilter;
+    private String mIndent = "";
+    private boolean mIncludeOcrCharVariants;
+
+    /**
+     * @return Filter which writes only fields with the given names, e.g. {@code "resultState"}.
+     */
+    @NonNull
+    public static FieldFilter includeFields(@NonNull String... fieldNames) {
+        final Set<String> included = new HashSet<>(Arrays.asList(fieldNames));
+        return new FieldFilter() {
+            @Override
+            public boolean shouldWrite(@NonNull Class<?> resultClass, @NonNull String fieldName) {
+                return included.contains(fieldName);
+            }
+        };
+    }
+
+    /**
+     * @return Filter which writes all fields except ones with the given names.
+     */
+    @NonNull
+    public static FieldFilter excludeFields(@NonNull String... fieldNames) {
+        final Set<String> excluded = new HashSet<>(Arrays.asList(fieldNames));
+        return new FieldFilter() {
+            @Override
+            public boolean shouldWrite(@NonNull Class<?> resultClass, @NonNull String fieldName) {
+                return !excluded.contains(fieldName);
+            }
+        };
+    }
+
+    /**
+     * Sets filter applied to the fields of each result. Fields of nested objects, e.g. day of the
+     * date, are always written. By default, all fields are written.
+     */
+    @NonNull
+    public ResultSerializer setFieldFilter(@Nullable FieldFilter fieldFilter) {
+        mFieldFilter = fieldFilter;
+        return this;
+    }
+
+    /**
+     * Sets indent used for pretty printing. Default is empty, which writes compact JSON.
+     */
+    @NonNull
+    public ResultSerializer setIndent(@NonNull String indent) {
+        mIndent = indent;
+        return this;
+    }
+
+    /**
+     * Sets whether alternative recognition variants of each OCR char are written.
+     */
+    @NonNull
+    public ResultSerializer setIncludeOcrCharVariants(boolean includeOcrCharVariants) {
+        mIncludeOcrCharVariants = includeOcrCharVariants;
+        return this;
+    }
+
+    /**
+     * Writes a JSON array with non-empty results of the given recognizers. Writer is flushed, but
+     * not closed.
+     */
+    public void writeRecognizerResults(@Nullable Recognizer<?>[] recognizers, @NonNull Writer writer) throws IOException {
+        JsonWriter jsonWriter = createJsonWriter(writer);
+        jsonWriter.beginArray();
+        if (recognizers != null) {
+            for (Recognizer<?> recognizer : recognizers) {
+                Recognizer.Result result = recognizer.getResult();
+                if (result.getResultState() != Recognizer.Result.State.Empty) {
+                    writeEntityResult(jsonWriter, result);
+                }
+            }
+        }
+        jsonWriter.endArray();
+        jsonWriter.flush();
+    }
+
+    /**
+     * Writes results as UTF-8 encoded JSON. Stream is flushed, but not closed.
+     */
+    public void writeRecognizerResults(@Nullable Recognizer<?>[] recognizers, @NonNull OutputStream outputStream) throws IOException {
+        writeRecognizerResults(recognizers, new BufferedWriter(new OutputStreamWriter(outputStream, UTF_8)));
+    }
+
+    /**
+     * Writes a single recognizer, parser or other entity result as a JSON object. Writer is
+     * flushed, but not closed.
+     */
+    public void writeResult(@NonNull Entity.Result result, @NonNull Writer writer) throws IOException {
+        JsonWriter jsonWriter = createJsonWriter(writer);
+        writeEntityResult(jsonWriter, result);
+        jsonWriter.flush();
+    }
+
+    /**
+     * Writes OCR result as a JSON object with blocks, lines and chars. Writer is flushed, but not
+     * closed.
+     */
+    public void writeOcrResult(@NonNull OcrResult ocrResult, @NonNull Writer writer) throws IOException {
+        JsonWriter jsonWriter = createJsonWriter(writer);
+        writeOcrResult(jsonWriter, ocrResult);
+        jsonWriter.flush();
+    }
+
+    @NonNull
+    private JsonWriter createJsonWriter(@NonNull Writer writer) {
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.setIndent(mIndent);
+        return jsonWriter;
+    }
+
+    private void writeEntityResult(@NonNull JsonWriter jsonWriter, @NonNull Entity.Result result) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("type").value(getTypeName(result.getClass()));
+        for (Property property : getProperties(result.getClass())) {
+            if (mFieldFilter != null && !mFieldFilter.shouldWrite(result.getClass(), property.mName)) {
+                continue;
+            }
+            jsonWriter.name(property.mName);
+            writeValue(jsonWriter, property.get(result), 0);
+        }
+        jsonWriter.endObject();
+    }
+
+    private void writeValue(@NonNull JsonWriter jsonWriter, @Nullable Object value, int depth) throws IOException {
+        if (value == null) {
+            jsonWriter.nullValue();
+        } else if (value instanceof String) {
+            jsonWriter.value((String) value);
+        } else if (value instanceof Boolean) {
+            jsonWriter.value((Boolean) value);
+        } else if (value instanceof Float || value instanceof Double) {
+            double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                jsonWriter.nullValue();
+            } else {
+                jsonWriter.value(number);
+            }
+        } else if (value instanceof Number) {
+            jsonWriter.value(((Number) value).longValue());
+        } else if (value instanceof Character) {
+            jsonWriter.value(String.valueOf((char) (Character) value));
+        } else if (value instanceof Enum) {
+            jsonWriter.value(((Enum<?>) value).name());
+        } else if (value instanceof OcrResult) {
+            writeOcrResult(jsonWriter, (OcrResult) value);
+        } else if (value instanceof Entity.Result) {
+            writeEntityResult(jsonWriter, (Entity.Result) value);
+        } else if (value instanceof byte[]) {
+            writeBytes(jsonWriter, (byte[]) value);
+        } else if (value instanceof Object[]) {
+            jsonWriter.beginArray();
+            for (Object element : (Object[]) value) {
+                writeValue(jsonWriter, element, depth + 1);
+            }
+            jsonWriter.endArray();
+        } else if (depth < MAX_NESTING_DEPTH && value.getClass().getName().startsWith("com.microblink.")) {
+            // value types of the SDK, e.g. dates and rectangles
+            jsonWriter.beginObject();
+            for (Property property : getProperties(value.getClass())) {
+                jsonWriter.name(property.mName);
+                writeValue(jsonWriter, property.get(value), depth + 1);
+            }
+            jsonWriter.endObject();
+        } else {
+            jsonWriter.value(value.toString());
+        }
+    }
+
+    private static void writeBytes(@NonNull JsonWriter jsonWriter, @NonNull byte[] bytes) throws IOException {
+        jsonWriter.beginArray();
+        for (byte b : bytes) {
+            jsonWriter.value(b & 0xFF);
+        }
+        jsonWriter.endArray();
+    }
+
+    private void writeOcrResult(@NonNull JsonWriter jsonWriter, @NonNull OcrResult ocrResult) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("blocks").beginArray();
+        for (OcrBlock block : ocrResult.getBlocks()) {
+            jsonWriter.beginObject();
+            jsonWriter.name("position");
+            writeValue(jsonWriter, block.getPosition(), 0);
+            jsonWriter.name("lines").beginArray();
+            for (OcrLine line : block.getLines()) {
+                jsonWriter.beginObject();
+                jsonWriter.name("position");
+                writeValue(jsonWriter, line.getPosition(), 0);
+                jsonWriter.name("chars").beginArray();
+                for (CharWithVariants charWithVariants : line.getChars()) {
+                    writeOcrChar(jsonWriter, charWithVariants.getChar(),
+                            mIncludeOcrCharVariants ? charWithVariants.getRecognitionVariants() : null);
+                }
+                jsonWriter.endArray();
+                jsonWriter.endObject();
+            }
+            jsonWriter.endArray();
+            jsonWriter.endObject();
+        }
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+    }
+
+    private void writeOcrChar(@NonNull JsonWriter jsonWriter, @NonNull OcrChar ocrChar, @Nullable OcrChar[] variants) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("value").value(String.valueOf(ocrChar.getValue()));
+        jsonWriter.name("quality").value(ocrChar.getQuality());
+        jsonWriter.name("uncertain").value(ocrChar.isUncertain());
+        jsonWriter.name("height").value(ocrChar.getHeight());
+        jsonWriter.name("font");
+        writeValue(jsonWriter, ocrChar.getFont(), 0);
+        jsonWriter.name("position");
+        writeValue(jsonWriter, ocrChar.getPosition(), 0);
+        if (variants != null) {
+            jsonWriter.name("variants").beginArray();
+            for (OcrChar variant : variants) {
+                writeOcrChar(jsonWriter, variant, null);
+            }
+            jsonWriter.endArray();
+        }
+        jsonWriter.endObject();
+    }
+
+    /**
+     * @return Class name including the enclosing class, e.g. {@code BlinkInputRecognizer.Result}.
+     */
+    @NonNull
+    private static String getTypeName(@NonNull Class<?> clazz) {
+        String name = clazz.getName();
+        return name.substring(name.lastIndexOf('.') + 1).replace('$', '.');
+    }
+
+    @NonNull
+    private static List<Property> getProperties(@NonNull Class<?> clazz) {
+        List<Property> properties = sPropertiesCache.get(clazz);
+        if (properties == null) {
+            properties = findProperties(clazz);
+            sPropertiesCache.put(clazz, properties);
+        }
+        return properties;
+    }
+
+    @NonNull
+    private static List<Property> findProperties(@NonNull Class<?> clazz) {
+        List<Property> properties = new ArrayList<>();
+        for (Method method : clazz.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.getParameterTypes().length != 0
+                    || IGNORED_GETTERS.contains(method.getName())) {
+                continue;
+            }
+            Class<?> type = method.getReturnType();
+            if (type == void.class || Image.class.isAssignableFrom(type) || Bitmap.class.isAssignableFrom(type)) {
+                continue;
+            }
+            String name = method.getName();
+            String propertyName;
+            if (name.startsWith("get") && name.length() > 3) {
+                propertyName = name.substring(3);
+            } else if (name.startsWith("is") && name.length() > 2 && type == boolean.class) {
+                propertyName = name.substring(2);
+            } else {
+                continue;
+            }
+            propertyName = Character.toLowerCase(propertyName.charAt(0)) + propertyName.substring(1);
+            properties.add(new Property(propertyName, method));
+        }
+        // order of methods returned by reflection is not specified
+        Collections.sort(properties, new Comparator<Property>() {
+            @Override
+            public int compare(Property lhs, Property rhs) {
+                return lhs.mName.compareTo(rhs.mName);
+            }
+        });
+        return Collections.unmodifiableList(properties);
+    }
+
+    private static final class Property {
+
+        final String mName;
+        private final Method mGetter;
+
+        Property(@NonNull String name, @NonNull Method getter) {
+            mName = name;
+            mGetter = getter;
+        }
+
+        @Nullable
+        Object get(@NonNull Object target) throws IOException {
+            try {
+                return mGetter.invoke(target);
+            } catch (IllegalAccessException e) {
+                throw new IOException("Failed to read " + mName, e);
+            } catch (InvocationTargetException e) {
+                throw new IOException("Failed to read " + mName, e.getCause());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.microblink.blinkinput.storage;
+
+import com.microblink.blinkinput.entities.recognizers.RecognizerBundle;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+/**
+ * Saves state of a {@link RecognizerBundle} only when its content has changed since the last save.
+ * <p>
+ * With {@code IntentDataTransferMode.PERSISTED_OPTIMISED}, {@link RecognizerBundle#saveState()}
+ * rewrites the whole serialized bundle to a temporary file. Activities used to call it in every
+ * {@code onSaveInstanceState} and to delete the file in every {@code onResume}, so each pause and
+ * resume cycle wrote the same bundle again. Here the saved file is kept while it is up to date and
+ * is deleted only when the activity finishes, so repeated saves without new results are skipped.
+ * <p>
+ * Bundle content changes when it is loaded from an intent, which consumes the saved file, and when
+ * recognition produces results; report the latter with {@link #onContentChanged()}.
+ */
+public final class BundleStateSaver {
+
+    private final RecognizerBundle mRecognizerBundle;
+    /** Whether the saved file holds the current content of the bundle. */
+    private volatile boolean mSaved;
+
+    /**
+     * @param recognizerBundle Bundle which has just been created or loaded from an intent.
+     */
+    public BundleStateSaver(@NonNull RecognizerBundle recognizerBundle) {
+        mRecognizerBundle = recognizerBundle;
+    }
+
+    /**
+     * Marks saved state as stale, e.g. after recognition has finished.
+     */
+    @AnyThread
+    public void onContentChanged() {
+        mSaved = false;
+    }
+
+    /**
+     * Saves the bundle if its content has changed since the last save. Call from
+     * {@code onSaveInstanceState}.
+     */
+    public void saveState() {
+        if (!mSaved) {
+            mSaved = true;
+            mRecognizerBundle.saveState();
+        }
+    }
+
+    /**
+     * Deletes the saved file. Call when the activity is finishing, saved state will not be needed
+     * anymore.
+     */
+    public void clearSavedState() {
+        mSaved = false;
+        mRecognizerBundle.clearSavedState();
+    }
+
+}
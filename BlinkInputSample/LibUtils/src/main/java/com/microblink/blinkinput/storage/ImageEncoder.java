@@ -0,0 +1,291 @@
+package com.microblink.blinkinput.storage;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.os.Build;
+
+import com.microblink.blinkinput.image.Image;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Encodes {@link Image} directly from its native pixel buffer, without creating an ARGB
+ * {@link Bitmap} with {@link Image#convertToBitmap()}.
+ * <p>
+ * JPEG images are produced by converting pixels into an NV21 buffer (1.5 bytes per pixel instead
+ * of 4) which is compressed with {@link YuvImage}. PNG images are streamed row by row, so only a
+ * single row of pixels is held in memory. Platform has no WebP encoder that works without a
+ * bitmap, so WebP still goes through {@link Image#convertToBitmap()}.
+ * <p>
+ * Image orientation is applied, so encoded image looks the same as the converted bitmap would.
+ */
+public final class ImageEncoder {
+
+    public enum Format {
+        JPEG,
+        PNG,
+        WEBP
+    }
+
+    /** Default quality of lossy formats. */
+    public static final int DEFAULT_QUALITY = 95;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int PNG_COLOR_TYPE_GRAYSCALE = 0;
+    private static final int PNG_COLOR_TYPE_RGB = 2;
+    private static final int PNG_FILTER_SUB = 1;
+    private static final int PNG_IDAT_CHUNK_SIZE = 64 * 1024;
+
+    private final Format mFormat;
+    private int mQuality = DEFAULT_QUALITY;
+    private boolean mGrayscale;
+
+    public ImageEncoder(@NonNull Format format) {
+        mFormat = format;
+    }
+
+    /**
+     * Sets quality in range [0, 100]. For lossy formats this is the usual encoder quality, for PNG
+     * higher quality means stronger (and slower) compression.
+     */
+    @NonNull
+    public ImageEncoder setQuality(int quality) {
+        mQuality = Math.max(0, Math.min(100, quality));
+        return this;
+    }
+
+    /**
+     * Sets whether only luminance should be encoded. Not supported for WebP.
+     */
+    @NonNull
+    public ImageEncoder setGrayscale(boolean grayscale) {
+        mGrayscale = grayscale;
+        return this;
+    }
+
+    /**
+     * Encodes the image into the given stream. Stream is flushed, but not closed.
+     */
+    public void encode(@NonNull Image image, @NonNull OutputStream outputStream) throws IOException {
+        if (image.isDisposed()) {
+            throw new IOException("Image has been disposed");
+        }
+        switch (mFormat) {
+            case JPEG:
+                encodeJpeg(new ImagePixelReader(image), outputStream);
+                break;
+            case PNG:
+                encodePng(new ImagePixelReader(image), outputStream);
+                break;
+            case WEBP:
+                encodeWebp(image, outputStream);
+                break;
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * Encodes the image into the given channel, starting at its current position. Channel is not
+     * closed.
+     */
+    public void encode(@NonNull Image image, @NonNull FileChannel channel) throws IOException {
+        encode(image, new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    private void encodeJpeg(@NonNull ImagePixelReader reader, @NonNull OutputStream outputStream) throws IOException {
+        // chroma in NV21 is subsampled 2x2, so odd last row or column is dropped
+        int width = reader.getWidth() & ~1;
+        int height = reader.getHeight() & ~1;
+        if (width == 0 || height == 0) {
+            throw new IOException("Image is too small to be encoded as JPEG");
+        }
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        int[] upperRow = new int[reader.getWidth()];
+        int[] lowerRow = new int[reader.getWidth()];
+        int chromaOffset = width * height;
+        for (int y = 0; y < height; y += 2) {
+            reader.readRow(y, upperRow);
+            reader.readRow(y + 1, lowerRow);
+            int upperOffset = y * width;
+            int lowerOffset = upperOffset + width;
+            int vuOffset = chromaOffset + (y / 2) * width;
+            for (int x = 0; x < width; x += 2) {
+                int p00 = upperRow[x];
+                int p01 = upperRow[x + 1];
+                int p10 = lowerRow[x];
+                int p11 = lowerRow[x + 1];
+                nv21[upperOffset + x] = (byte) luma(p00);
+                nv21[upperOffset + x + 1] = (byte) luma(p01);
+                nv21[lowerOffset + x] = (byte) luma(p10);
+                nv21[lowerOffset + x + 1] = (byte) luma(p11);
+                if (mGrayscale) {
+                    nv21[vuOffset + x] = (byte) 128;
+                    nv21[vuOffset + x + 1] = (byte) 128;
+                } else {
+                    int r = (red(p00) + red(p01) + red(p10) + red(p11) + 2) >> 2;
+                    int g = (green(p00) + green(p01) + green(p10) + green(p11) + 2) >> 2;
+                    int b = (blue(p00) + blue(p01) + blue(p10) + blue(p11) + 2) >> 2;
+                    // JFIF (full range) BT.601 conversion
+                    nv21[vuOffset + x] = (byte) clamp((32768 * r - 27439 * g - 5329 * b + (128 << 16) + 32768) >> 16);
+                    nv21[vuOffset + x + 1] = (byte) clamp((-11059 * r - 21709 * g + 32768 * b + (128 << 16) + 32768) >> 16);
+                }
+            }
+        }
+        YuvImage yuvImage = new YuvImage(nv21, android.graphics.ImageFormat.NV21, width, height, null);
+        if (!yuvImage.compressToJpeg(new Rect(0, 0, width, height), mQuality, outputStream)) {
+            throw new IOException("JPEG compression has failed");
+        }
+    }
+
+    private void encodePng(@NonNull ImagePixelReader reader, @NonNull OutputStream outputStream) throws IOException {
+        int width = reader.getWidth();
+        int height = reader.getHeight();
+        boolean grayscale = mGrayscale || reader.isGrayscale();
+        int bytesPerPixel = grayscale ? 1 : 3;
+
+        outputStream.write(PNG_SIGNATURE);
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(width).putInt(height)
+                .put((byte) 8) // bit depth
+                .put((byte) (grayscale ? PNG_COLOR_TYPE_GRAYSCALE : PNG_COLOR_TYPE_RGB))
+                .put((byte) 0) // compression method
+                .put((byte) 0) // filter method
+                .put((byte) 0); // no interlace
+        writePngChunk(outputStream, "IHDR", header.array(), 13);
+
+        Deflater deflater = new Deflater(Math.max(1, mQuality * Deflater.BEST_COMPRESSION / 100));
+        try {
+            DeflaterOutputStream idat = new DeflaterOutputStream(new PngDataOutputStream(outputStream), deflater, PNG_IDAT_CHUNK_SIZE);
+            int[] row = new int[width];
+            byte[] raw = new byte[width * bytesPerPixel];
+            byte[] filtered = new byte[raw.length + 1];
+            filtered[0] = PNG_FILTER_SUB;
+            for (int y = 0; y < height; ++y) {
+                reader.readRow(y, row);
+                for (int x = 0, i = 0; x < width; ++x) {
+                    int pixel = row[x];
+                    if (grayscale) {
+                        raw[i++] = (byte) luma(pixel);
+                    } else {
+                        raw[i++] = (byte) red(pixel);
+                        raw[i++] = (byte) green(pixel);
+                        raw[i++] = (byte) blue(pixel);
+                    }
+                }
+                for (int i = 0; i < raw.length; ++i) {
+                    int left = i >= bytesPerPixel ? raw[i - bytesPerPixel] : 0;
+                    filtered[i + 1] = (byte) (raw[i] - left);
+                }
+                idat.write(filtered);
+            }
+            // writes remaining compressed data as the last IDAT chunk
+            idat.finish();
+            idat.flush();
+        } finally {
+            deflater.end();
+        }
+        writePngChunk(outputStream, "IEND", new byte[0], 0);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void encodeWebp(@NonNull Image image, @NonNull OutputStream outputStream) throws IOException {
+        Bitmap bitmap = image.convertToBitmap();
+        if (bitmap == null) {
+            throw new IOException("Image could not be converted to bitmap");
+        }
+        try {
+            Bitmap.CompressFormat format = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                    ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+            if (!bitmap.compress(format, mQuality, outputStream)) {
+                throw new IOException("WebP compression has failed");
+            }
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private static void writePngChunk(@NonNull OutputStream outputStream, @NonNull String type, @NonNull byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        writeInt(outputStream, length);
+        outputStream.write(typeBytes);
+        outputStream.write(data, 0, length);
+        writeInt(outputStream, (int) crc.getValue());
+    }
+
+    private static void writeInt(@NonNull OutputStream outputStream, int value) throws IOException {
+        outputStream.write(value >>> 24);
+        outputStream.write(value >>> 16);
+        outputStream.write(value >>> 8);
+        outputStream.write(value);
+    }
+
+    /**
+     * Wraps everything written to it into PNG IDAT chunks.
+     */
+    private static final class PngDataOutputStream extends OutputStream {
+
+        private final OutputStream mOutputStream;
+
+        PngDataOutputStream(@NonNull OutputStream outputStream) {
+            mOutputStream = outputStream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            byte[] data = b;
+            if (off != 0) {
+                data = new byte[len];
+                System.arraycopy(b, off, data, 0, len);
+            }
+            writePngChunk(mOutputStream, "IDAT", data, len);
+        }
+
+        @Override
+        public void close() {
+            // underlying stream is owned by the caller
+        }
+    }
+
+    private static int luma(int rgb) {
+        return (19595 * red(rgb) + 38470 * green(rgb) + 7471 * blue(rgb) + 32768) >> 16;
+    }
+
+    private static int red(int rgb) {
+        return (rgb >> 16) & 0xFF;
+    }
+
+    private static int green(int rgb) {
+        return (rgb >> 8) & 0xFF;
+    }
+
+    private static int blue(int rgb) {
+        return rgb & 0xFF;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+}
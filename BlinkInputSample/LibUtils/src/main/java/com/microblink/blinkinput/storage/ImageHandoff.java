@@ -0,0 +1,364 @@
+package com.microblink.blinkinput.storage;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.microblink.blinkinput.hardware.orientation.Orientation;
+import com.microblink.blinkinput.image.Image;
+import com.microblink.blinkinput.image.ImageFormat;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Passes raw result image pixels between activities without encoding them.
+ * <p>
+ * {@link #put(Image)} copies the native pixel buffer of the image, together with its format and
+ * orientation, and writes it to a file in the cache directory in background. It returns a handle
+ * which can be put into an {@code Intent} immediately. Receiving activity converts the pixels directly into a bitmap of display size with
+ * {@link #loadBitmap(String, int, int, Bitmap.Config, Callback)} on a background thread, so there
+ * is no JPEG encode/decode round trip. Files are memory-mapped when read, so pixels do not pass
+ * through the Java heap.
+ * <p>
+ * Handles stay valid until they are {@link #release(String) released}, also after the process is
+ * killed while the receiving activity is in background, as long as the pixels have been written
+ * by then. Files which are never released, e.g. because the task was removed while the process
+ * was not running, are deleted once they are older than a day.
+ */
+public final class ImageHandoff {
+
+    private static final String TAG = "ImageHandoff";
+
+    private static final String DIRECTORY_NAME = "image-handoff";
+    private static final String FILE_PREFIX = "image-";
+    private static final String FILE_SUFFIX = ".raw";
+    /** Suffix of files being written, they are renamed once complete. */
+    private static final String PARTIAL_FILE_SUFFIX = ".part";
+    /** Format, orientation, raw width, raw height and row stride, each as int. */
+    private static final int HEADER_SIZE = 5 * 4;
+    private static final long STALE_FILE_AGE_MS = TimeUnit.DAYS.toMillis(1);
+
+    private static final int NUM_THREADS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 5;
+
+    private static ImageHandoff sInstance;
+
+    /**
+     * Receives bitmap loaded by {@link #loadBitmap(String, int, int, Bitmap.Config, Callback)}.
+     */
+    public interface Callback {
+        /**
+         * Called on the main thread. Activity which requested the bitmap may have been destroyed
+         * in the meantime.
+         *
+         * @param bitmap Loaded bitmap or null if handle is unknown or has been released.
+         */
+        @MainThread
+        void onBitmapLoaded(@Nullable Bitmap bitmap);
+    }
+
+    private final File mDirectory;
+    private final ThreadPoolExecutor mExecutor;
+    /**
+     * Writes and deletes files in order. Separate from {@link #mExecutor}, whose tasks wait for the
+     * writes.
+     */
+    private final ThreadPoolExecutor mWriteExecutor;
+    /** Writes which have not completed yet, by handle, guarded by itself. */
+    private final Map<String, Future<?>> mPendingWrites = new HashMap<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * @return Handoff shared by the whole application.
+     */
+    @NonNull
+    public static synchronized ImageHandoff getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new ImageHandoff(new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME));
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param directory Directory which holds the handed over pixels and is used only by this
+     *                  handoff.
+     */
+    public ImageHandoff(@NonNull File directory) {
+        mDirectory = directory;
+        mExecutor = new ThreadPoolExecutor(NUM_THREADS, NUM_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        // threads are not needed while there is nothing to load or write
+        mExecutor.allowCoreThreadTimeOut(true);
+        mWriteExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        mWriteExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Copies pixels of the image into memory, so image can be disposed or reused by the recognizer
+     * as soon as this method returns. Copy is written to a file in background, readers of the
+     * handle wait for it.
+     *
+     * @return Handle of the copied pixels or null if image is null or has been disposed.
+     */
+    @Nullable
+    public String put(@Nullable Image image) {
+        if (image == null || image.isDisposed() || image.getImageFormat() == null) {
+            return null;
+        }
+        ByteBuffer pixels = image.getBuffer().duplicate();
+        int size = Math.min(pixels.capacity(),
+                ImagePixelReader.getPixelDataSize(image.getImageFormat(), image.getRawHeight(), image.getRowStride()));
+        pixels.clear();
+        pixels.limit(size);
+        final ByteBuffer content = ByteBuffer.allocateDirect(HEADER_SIZE + size);
+        content.putInt(image.getImageFormat().ordinal())
+                .putInt(image.getImageOrientation().ordinal())
+                .putInt(image.getRawWidth())
+                .putInt(image.getRawHeight())
+                .putInt(image.getRowStride())
+                .put(pixels);
+        content.flip();
+
+        final String handle = FILE_PREFIX + UUID.randomUUID() + FILE_SUFFIX;
+        FutureTask<Void> write = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(handle, content);
+                } finally {
+                    synchronized (mPendingWrites) {
+                        mPendingWrites.remove(handle);
+                    }
+                }
+            }
+        }, null);
+        // registered before it is started, so it is never removed before it is added
+        synchronized (mPendingWrites) {
+            mPendingWrites.put(handle, write);
+        }
+        mWriteExecutor.execute(write);
+        return handle;
+    }
+
+    @WorkerThread
+    private void write(@NonNull String handle, @NonNull ByteBuffer content) {
+        File file = new File(mDirectory, handle);
+        File partialFile = new File(mDirectory, handle + PARTIAL_FILE_SUFFIX);
+        try {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Failed to create " + mDirectory);
+            }
+            deleteStaleFiles();
+            RandomAccessFile randomAccessFile = new RandomAccessFile(partialFile, "rw");
+            try {
+                FileChannel channel = randomAccessFile.getChannel();
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+            } finally {
+                randomAccessFile.close();
+            }
+            // incomplete file is never visible under the handle, e.g. if process is killed while writing
+            if (!partialFile.renameTo(file)) {
+                throw new IOException("Failed to rename " + partialFile);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to copy image", e);
+            //noinspection ResultOfMethodCallIgnored
+            partialFile.delete();
+        }
+    }
+
+    /**
+     * Converts the pixels into a new bitmap on a background thread. Pixels are kept, so this can be
+     * called again, e.g. when activity is recreated after screen rotation.
+     *
+     * @see #getBitmap(String, int, int, Bitmap.Config)
+     */
+    public void loadBitmap(@Nullable final String handle, final int maxWidth, final int maxHeight,
+                           @NonNull final Bitmap.Config config, @NonNull final Callback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = getBitmap(handle, maxWidth, maxHeight, config);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onBitmapLoaded(bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Converts the pixels into a new bitmap on the calling thread.
+     *
+     * @param handle    Handle returned by {@link #put(Image)}.
+     * @param maxWidth  Maximum width at which image will be displayed, image is subsampled by a
+     *                  power of two while it stays at least this large. Non-positive value
+     *                  disables subsampling.
+     * @param maxHeight Maximum height at which image will be displayed.
+     * @param config    Pixel config of the bitmap.
+     * @return Bitmap in orientation corrected coordinates or null if handle is unknown or has been
+     * released.
+     */
+    @WorkerThread
+    @Nullable
+    public Bitmap getBitmap(@Nullable String handle, int maxWidth, int maxHeight, @NonNull Bitmap.Config config) {
+        File file = getFile(handle);
+        if (file == null || !awaitWrite(handle)) {
+            return null;
+        }
+        try {
+            return toBitmap(map(file), maxWidth, maxHeight, config);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read image " + handle, e);
+            return null;
+        }
+    }
+
+    /**
+     * Frees the pixels of the handle. Unknown and null handles are ignored. Bitmaps which are
+     * being converted from the handle at the same time are still completed.
+     */
+    public void release(@Nullable String handle) {
+        final File file = getFile(handle);
+        if (file != null) {
+            // after the pending write of the handle, if there is one
+            mWriteExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return false if thread has been interrupted while waiting.
+     */
+    private boolean awaitWrite(@NonNull String handle) {
+        Future<?> write;
+        synchronized (mPendingWrites) {
+            write = mPendingWrites.get(handle);
+        }
+        if (write == null) {
+            return true;
+        }
+        try {
+            write.get();
+            return true;
+        } catch (ExecutionException e) {
+            // failure has been logged, file does not exist
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Nullable
+    private File getFile(@Nullable String handle) {
+        // handles arrive in intents, they must not point outside of the handoff directory
+        if (handle == null || !handle.startsWith(FILE_PREFIX) || handle.indexOf(File.separatorChar) >= 0) {
+            return null;
+        }
+        return new File(mDirectory, handle);
+    }
+
+    private void deleteStaleFiles() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long staleBefore = System.currentTimeMillis() - STALE_FILE_AGE_MS;
+        for (File file : files) {
+            if (file.lastModified() < staleBefore) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    @NonNull
+    private static ByteBuffer map(@NonNull File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            // mapping stays valid after the file is closed and also after it is released
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @NonNull
+    private static Bitmap toBitmap(@NonNull ByteBuffer buffer, int maxWidth, int maxHeight, @NonNull Bitmap.Config config) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE) {
+            throw new IOException("Image file is truncated");
+        }
+        ImageFormat[] formats = ImageFormat.values();
+        Orientation[] orientations = Orientation.values();
+        int format = buffer.getInt();
+        int orientation = buffer.getInt();
+        if (format < 0 || format >= formats.length || orientation < 0 || orientation >= orientations.length) {
+            throw new IOException("Image file is corrupted");
+        }
+        int rawWidth = buffer.getInt();
+        int rawHeight = buffer.getInt();
+        int rowStride = buffer.getInt();
+        ImagePixelReader reader = new ImagePixelReader(buffer.slice(), formats[format], orientations[orientation],
+                rawWidth, rawHeight, rowStride);
+
+        int width = reader.getWidth();
+        int height = reader.getHeight();
+        int step = 1;
+        if (maxWidth > 0 && maxHeight > 0) {
+            while (width / (step * 2) >= maxWidth && height / (step * 2) >= maxHeight) {
+                step *= 2;
+            }
+        }
+        int bitmapWidth = width / step;
+        int bitmapHeight = height / step;
+        if (bitmapWidth <= 0 || bitmapHeight <= 0) {
+            throw new IOException("Image is empty");
+        }
+        Bitmap bitmap = Bitmap.createBitmap(bitmapWidth, bitmapHeight, config);
+
+        int[] row = new int[bitmapWidth];
+        for (int y = 0; y < bitmapHeight; ++y) {
+            reader.readRow(y * step, row, step);
+            for (int x = 0; x < bitmapWidth; ++x) {
+                row[x] |= 0xFF000000;
+            }
+            bitmap.setPixels(row, 0, bitmapWidth, 0, y, bitmapWidth, 1);
+        }
+        return bitmap;
+    }
+
+}
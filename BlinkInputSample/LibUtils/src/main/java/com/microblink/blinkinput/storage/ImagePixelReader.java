@@ -0,0 +1,168 @@
+package com.microblink.blinkinput.storage;
+
+import com.microblink.blinkinput.hardware.orientation.Orientation;
+import com.microblink.blinkinput.image.Image;
+import com.microblink.blinkinput.image.ImageFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Reads pixels of the image as packed RGB values, in orientation corrected coordinates.
+ * <p>
+ * Pixels can be read either from the native buffer of an {@link Image} or from any other buffer
+ * holding a copy of it, e.g. the memory-mapped file used by {@link ImageHandoff}.
+ */
+final class ImagePixelReader {
+
+    private final ByteBuffer mBuffer;
+    private final ImageFormat mFormat;
+    private final Orientation mOrientation;
+    private final int mRawWidth;
+    private final int mRawHeight;
+    private final int mRowStride;
+    private final int mBytesPerPixel;
+
+    ImagePixelReader(@NonNull Image image) throws IOException {
+        this(image.getBuffer(), image.getImageFormat(), image.getImageOrientation(),
+                image.getRawWidth(), image.getRawHeight(), image.getRowStride());
+    }
+
+    ImagePixelReader(@NonNull ByteBuffer buffer, @Nullable ImageFormat format, @NonNull Orientation orientation,
+                     int rawWidth, int rawHeight, int rowStride) throws IOException {
+        if (format == null) {
+            throw new IOException("Unknown image format");
+        }
+        mBuffer = buffer;
+        mFormat = format;
+        mOrientation = orientation;
+        mRawWidth = rawWidth;
+        mRawHeight = rawHeight;
+        mRowStride = rowStride;
+        mBytesPerPixel = getBytesPerPixel(format);
+    }
+
+    /**
+     * {@link ImageFormat} documents pixel stride of 1 even for multi-byte formats, so
+     * {@link Image#getPixelStride()} can not be used to step between pixels of a row.
+     */
+    private static int getBytesPerPixel(@NonNull ImageFormat format) {
+        switch (format) {
+            case BGRA_8888:
+                return 4;
+            case BGR:
+                return 3;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * @return Number of bytes of the image buffer which hold pixels of the image.
+     */
+    static int getPixelDataSize(@NonNull ImageFormat format, int rawHeight, int rowStride) {
+        switch (format) {
+            case YUV_NV21:
+            case YUV_NV12:
+                // luma plane followed by half as many rows of interleaved chroma
+                return rowStride * (rawHeight + (rawHeight + 1) / 2);
+            default:
+                return rowStride * rawHeight;
+        }
+    }
+
+    boolean isGrayscale() {
+        return mFormat == ImageFormat.ALPHA_8;
+    }
+
+    int getWidth() {
+        return isRotated() ? mRawHeight : mRawWidth;
+    }
+
+    int getHeight() {
+        return isRotated() ? mRawWidth : mRawHeight;
+    }
+
+    private boolean isRotated() {
+        return mOrientation == Orientation.ORIENTATION_PORTRAIT || mOrientation == Orientation.ORIENTATION_PORTRAIT_UPSIDE;
+    }
+
+    void readRow(int y, @NonNull int[] row) {
+        readRow(y, row, 1);
+    }
+
+    /**
+     * Reads every {@code step}-th pixel of the row, starting with the first one, e.g. for
+     * subsampling the image while it is converted.
+     */
+    void readRow(int y, @NonNull int[] row, int step) {
+        int count = getWidth() / step;
+        for (int i = 0; i < count; ++i) {
+            int x = i * step;
+            int rawX;
+            int rawY;
+            switch (mOrientation) {
+                case ORIENTATION_PORTRAIT:
+                    // image needs to be rotated by 90 degrees clockwise
+                    rawX = y;
+                    rawY = mRawHeight - 1 - x;
+                    break;
+                case ORIENTATION_PORTRAIT_UPSIDE:
+                    // image needs to be rotated by 90 degrees counterclockwise
+                    rawX = mRawWidth - 1 - y;
+                    rawY = x;
+                    break;
+                case ORIENTATION_LANDSCAPE_LEFT:
+                    rawX = mRawWidth - 1 - x;
+                    rawY = mRawHeight - 1 - y;
+                    break;
+                default:
+                    rawX = x;
+                    rawY = y;
+                    break;
+            }
+            row[i] = readPixel(rawX, rawY);
+        }
+    }
+
+    private int readPixel(int rawX, int rawY) {
+        switch (mFormat) {
+            case ALPHA_8: {
+                int gray = mBuffer.get(rawY * mRowStride + rawX) & 0xFF;
+                return gray << 16 | gray << 8 | gray;
+            }
+            case BGRA_8888:
+            case BGR: {
+                int offset = rawY * mRowStride + rawX * mBytesPerPixel;
+                int b = mBuffer.get(offset) & 0xFF;
+                int g = mBuffer.get(offset + 1) & 0xFF;
+                int r = mBuffer.get(offset + 2) & 0xFF;
+                return r << 16 | g << 8 | b;
+            }
+            case YUV_NV21:
+            case YUV_NV12: {
+                // single plane: luma rows followed by interleaved chroma rows with the same stride
+                int luma = mBuffer.get(rawY * mRowStride + rawX) & 0xFF;
+                int chromaOffset = mRawHeight * mRowStride + (rawY / 2) * mRowStride + (rawX & ~1);
+                int first = (mBuffer.get(chromaOffset) & 0xFF) - 128;
+                int second = (mBuffer.get(chromaOffset + 1) & 0xFF) - 128;
+                int u = mFormat == ImageFormat.YUV_NV21 ? second : first;
+                int v = mFormat == ImageFormat.YUV_NV21 ? first : second;
+                int r = clamp(luma + ((91881 * v) >> 16));
+                int g = clamp(luma - ((22554 * u + 46802 * v) >> 16));
+                int b = clamp(luma + ((116130 * u) >> 16));
+                return r << 16 | g << 8 | b;
+            }
+            default:
+                return 0;
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.microblink.blinkinput.storage;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import com.microblink.blinkinput.image.Image;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Exports images to the shared image collection without blocking the calling thread.
+ * <p>
+ * Unlike {@link MediaStore.Images.Media#insertImage(ContentResolver, android.graphics.Bitmap, String, String)},
+ * which compresses a bitmap and generates a thumbnail on the calling thread, image is encoded with
+ * {@link ImageEncoder} on a background thread and streamed directly into the output stream of the
+ * inserted row. On Android 10 and newer the row is marked as {@link MediaStore.MediaColumns#IS_PENDING}
+ * while it is written, so other apps never see a partial image, and is published when done.
+ */
+public final class MediaStoreExporter {
+
+    private static final String TAG = "MediaStoreExporter";
+
+    private static final String MIME_TYPE_JPEG = "image/jpeg";
+    private static final long KEEP_ALIVE_SECONDS = 5;
+
+    private static MediaStoreExporter sInstance;
+
+    /**
+     * Callback notified when the export has finished.
+     */
+    public interface Callback {
+        /**
+         * Called on the main thread.
+         *
+         * @param uri URI of the exported image or null if export has failed.
+         */
+        @MainThread
+        void onImageExported(@Nullable Uri uri);
+    }
+
+    private final ContentResolver mContentResolver;
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private String mRelativePath = Environment.DIRECTORY_PICTURES;
+    private int mJpegQuality = ImageEncoder.DEFAULT_QUALITY;
+
+    /**
+     * @return Exporter shared by the whole application.
+     */
+    @NonNull
+    public static synchronized MediaStoreExporter getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new MediaStoreExporter(context.getApplicationContext().getContentResolver());
+        }
+        return sInstance;
+    }
+
+    public MediaStoreExporter(@NonNull ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+        // exports are written one by one, in order in which they were requested
+        mExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Sets directory within the shared storage into which images are exported, used on Android 10
+     * and newer. Defaults to {@link Environment#DIRECTORY_PICTURES}.
+     */
+    @NonNull
+    public synchronized MediaStoreExporter setRelativePath(@NonNull String relativePath) {
+        mRelativePath = relativePath;
+        return this;
+    }
+
+    @NonNull
+    public synchronized MediaStoreExporter setJpegQuality(int jpegQuality) {
+        mJpegQuality = jpegQuality;
+        return this;
+    }
+
+    /**
+     * Schedules export of the image and returns immediately. Image is copied, so it can be
+     * disposed or reused by the recognizer as soon as this method returns.
+     *
+     * @param image       Image to export.
+     * @param displayName Display name of the image, without extension.
+     * @param callback    Optional callback notified when export is done.
+     */
+    public void export(@NonNull Image image, @NonNull final String displayName, @Nullable final Callback callback) {
+        final Image copy = image.clone();
+        final String relativePath;
+        final int jpegQuality;
+        synchronized (this) {
+            relativePath = mRelativePath;
+            jpegQuality = mJpegQuality;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Uri uri;
+                try {
+                    uri = writeImage(copy, displayName, relativePath, jpegQuality);
+                } finally {
+                    copy.dispose();
+                }
+                if (callback != null) {
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onImageExported(uri);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    @Nullable
+    private Uri writeImage(@NonNull Image image, @NonNull String displayName, @NonNull String relativePath, int jpegQuality) {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, MIME_TYPE_JPEG);
+        Uri collection;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            values.put(MediaStore.MediaColumns.RELATIVE_PATH, relativePath);
+            values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+            collection = MediaStore.Images.Media.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY);
+        } else {
+            collection = MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+        }
+
+        Uri uri = null;
+        try {
+            uri = mContentResolver.insert(collection, values);
+            if (uri == null) {
+                throw new IOException("Failed to create media store row");
+            }
+            OutputStream rowStream = mContentResolver.openOutputStream(uri);
+            if (rowStream == null) {
+                throw new IOException("Failed to open " + uri);
+            }
+            OutputStream os = new BufferedOutputStream(rowStream);
+            try {
+                new ImageEncoder(ImageEncoder.Format.JPEG).setQuality(jpegQuality).encode(image, os);
+            } finally {
+                os.close();
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                ContentValues published = new ContentValues();
+                published.put(MediaStore.MediaColumns.IS_PENDING, 0);
+                mContentResolver.update(uri, published, null, null);
+            }
+            return uri;
+        } catch (IOException | RuntimeException e) {
+            // RuntimeException covers SecurityException and IllegalArgumentException thrown by provider
+            Log.e(TAG, "Failed to export image " + displayName, e);
+            if (uri != null) {
+                mContentResolver.delete(uri, null, null);
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.microblink.blinkinput.storage;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+
+import com.microblink.blinkinput.entities.recognizers.Recognizer;
+import com.microblink.blinkinput.image.Image;
+import com.microblink.blinkinput.serialization.ResultSerializer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Results-only alternative to transferring the whole {@code RecognizerBundle} between activities.
+ * <p>
+ * With {@code IntentDataTransferMode.PERSISTED_OPTIMISED}, saving recognizers to an intent writes
+ * every image held by their results to disk, even if the receiver only reads text fields. Here,
+ * textual results are stored in the intent eagerly, while images are copied to the
+ * {@link ImageHandoff} side store and only their handles are put into the intent. Image pixels are
+ * converted to a bitmap only when {@link #getImage(String, int, int, Bitmap.Config)} is first
+ * called for them.
+ * <p>
+ * Text survives process death together with the intent, images survive until they are
+ * {@link #release() released}.
+ */
+public final class ResultTransfer {
+
+    private static final String EXTRA_TEXTS = "com.microblink.blinkinput.storage.ResultTransfer.texts";
+    private static final String EXTRA_IMAGE_HANDLES = "com.microblink.blinkinput.storage.ResultTransfer.imageHandles";
+    private static final String EXTRA_RESULTS_JSON = "com.microblink.blinkinput.storage.ResultTransfer.resultsJson";
+
+    /**
+     * Collects results on the sending side.
+     */
+    public static final class Builder {
+
+        private final ImageHandoff mImageHandoff;
+        private final Bundle mTexts = new Bundle();
+        private final Bundle mImageHandles = new Bundle();
+        private String mResultsJson;
+
+        public Builder(@NonNull Context context) {
+            mImageHandoff = ImageHandoff.getInstance(context);
+        }
+
+        @NonNull
+        public Builder putText(@NonNull String key, @Nullable String value) {
+            mTexts.putString(key, value);
+            return this;
+        }
+
+        /**
+         * Copies the image to the side store, so it can be disposed or reused by the recognizer as
+         * soon as this method returns. Null images are ignored.
+         */
+        @NonNull
+        public Builder putImage(@NonNull String key, @Nullable Image image) {
+            String handle = mImageHandoff.put(image);
+            if (handle != null) {
+                mImageHandles.putString(key, handle);
+            }
+            return this;
+        }
+
+        /**
+         * Serializes non-empty results of the recognizers to JSON, without images.
+         */
+        @NonNull
+        public Builder putRecognizerResults(@NonNull Recognizer<?>... recognizers) throws IOException {
+            StringWriter writer = new StringWriter();
+            new ResultSerializer().writeRecognizerResults(recognizers, writer);
+            mResultsJson = writer.toString();
+            return this;
+        }
+
+        public void saveToIntent(@NonNull Intent intent) {
+            intent.putExtra(EXTRA_TEXTS, mTexts);
+            intent.putExtra(EXTRA_IMAGE_HANDLES, mImageHandles);
+            intent.putExtra(EXTRA_RESULTS_JSON, mResultsJson);
+        }
+    }
+
+    private final ImageHandoff mImageHandoff;
+    private final Bundle mTexts;
+    private final Bundle mImageHandles;
+    private final String mResultsJson;
+    private final Map<String, Bitmap> mMaterializedImages = new HashMap<>();
+
+    /**
+     * @return Whether the intent holds results saved by {@link Builder#saveToIntent(Intent)}.
+     */
+    public static boolean isInIntent(@Nullable Intent intent) {
+        return intent != null && intent.hasExtra(EXTRA_TEXTS);
+    }
+
+    /**
+     * @return Results saved in the intent or null if intent does not hold them.
+     */
+    @Nullable
+    public static ResultTransfer loadFromIntent(@NonNull Context context, @Nullable Intent intent) {
+        if (!isInIntent(intent)) {
+            return null;
+        }
+        Bundle imageHandles = intent.getBundleExtra(EXTRA_IMAGE_HANDLES);
+        return new ResultTransfer(ImageHandoff.getInstance(context), intent.getBundleExtra(EXTRA_TEXTS),
+                imageHandles != null ? imageHandles : new Bundle(), intent.getStringExtra(EXTRA_RESULTS_JSON));
+    }
+
+    private ResultTransfer(@NonNull ImageHandoff imageHandoff, @NonNull Bundle texts, @NonNull Bundle imageHandles,
+                           @Nullable String resultsJson) {
+        mImageHandoff = imageHandoff;
+        mTexts = texts;
+        mImageHandles = imageHandles;
+        mResultsJson = resultsJson;
+    }
+
+    @Nullable
+    public String getText(@NonNull String key) {
+        return mTexts.getString(key);
+    }
+
+    /**
+     * @return JSON array with recognizer results, see {@link ResultSerializer}, or null if results
+     * were not put into the transfer.
+     */
+    @Nullable
+    public String getResultsJson() {
+        return mResultsJson;
+    }
+
+    /**
+     * @return {@link ImageHandoff} handle of the image, which can be passed on to another activity
+     * without materializing the image.
+     */
+    @Nullable
+    public String getImageHandle(@NonNull String key) {
+        return mImageHandles.getString(key);
+    }
+
+    /**
+     * Materializes the image on first call and returns the same bitmap on subsequent calls. Image
+     * is converted on the calling thread, use {@link ImageHandoff#loadBitmap} with
+     * {@link #getImageHandle(String)} to convert it in background.
+     *
+     * @return Image or null if it was not transferred or is not available anymore.
+     */
+    @WorkerThread
+    @Nullable
+    public Bitmap getImage(@NonNull String key, int maxWidth, int maxHeight, @NonNull Bitmap.Config config) {
+        if (mMaterializedImages.containsKey(key)) {
+            return mMaterializedImages.get(key);
+        }
+        Bitmap image = mImageHandoff.getBitmap(getImageHandle(key), maxWidth, maxHeight, config);
+        mMaterializedImages.put(key, image);
+        return image;
+    }
+
+    /**
+     * Frees all transferred images. Must not be called if handles obtained with
+     * {@link #getImageHandle(String)} are still used elsewhere.
+     */
+    public void release() {
+        for (String key : mImageHandles.keySet()) {
+            mImageHandoff.release(mImageHandles.getString(key));
+        }
+        mMaterializedImages.clear();
+    }
+
+}